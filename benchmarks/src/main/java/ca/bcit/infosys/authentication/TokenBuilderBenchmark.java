@@ -0,0 +1,39 @@
+package ca.bcit.infosys.authentication;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashes passwords the way a login does.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBuilderBenchmark {
+
+    private final TokenBuilder builder = new TokenBuilder();
+
+    /**
+     * Hashes a typical password.
+     * @return hash
+     */
+    @Benchmark
+    public byte[] encrypt() {
+        return builder.encrypt("correct horse battery staple");
+    }
+}
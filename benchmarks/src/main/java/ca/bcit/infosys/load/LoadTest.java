@@ -0,0 +1,246 @@
+package ca.bcit.infosys.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load test of a running server, used to compare the
+ * request pool's platform and virtual thread modes on the dataset of
+ * load_test_dataset.sql. Start WildFly without, then with,
+ * -Dtimesheet.dao.virtual=true and run this once against each, with a
+ * different load.label. Every client thread sends one request at a time:
+ * mostly GET /timesheets/{id}, and a share of PUTs of one day's hours.
+ * Configured through system properties:
+ * <ul>
+ * <li>load.url - API root, http://localhost:8080/comp3910-assignment-3/api
+ * by default</li>
+ * <li>load.token - bearer token, the seeded administrator's by default</li>
+ * <li>load.clients - concurrent clients, 200 by default</li>
+ * <li>load.warmup - seconds of load before measuring, 10 by default</li>
+ * <li>load.seconds - seconds measured, 60 by default</li>
+ * <li>load.writes - share of requests that are PUTs, 0.1 by default</li>
+ * <li>load.label - name of the run, used for the result file</li>
+ * </ul>
+ * Results are printed and written as JSON to target/load-&lt;label&gt;.json;
+ * busy counts the failures that were 503, turned away by the request pool.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+public final class LoadTest {
+
+    /** First timesheet id of the synthetic dataset. */
+    private static final int FIRST_TIMESHEET = 101;
+
+    /** Timesheets in the synthetic dataset. */
+    private static final int TIMESHEETS = 1000;
+
+    /** Rows per synthetic timesheet, projects 1 to ROWS. */
+    private static final int ROWS = 5;
+
+    private final String url = System.getProperty("load.url",
+            "http://localhost:8080/comp3910-assignment-3/api");
+    private final String token = System.getProperty("load.token",
+            "10c867430ef329eed6c4996c6d0d5bbe2d2bf6f21224f270ecbb6470c595f4b3");
+    private final int clients = Integer.getInteger("load.clients", 200);
+    private final long warmupSeconds = Long.getLong("load.warmup", 10);
+    private final long seconds = Long.getLong("load.seconds", 60);
+    private final double writes = Double.parseDouble(
+            System.getProperty("load.writes", "0.1"));
+    private final String label = System.getProperty("load.label", "run");
+
+    private LoadTest() {
+    }
+
+    /**
+     * Runs the load test.
+     * @param args unused
+     * @throws Exception if the clients are interrupted or the result
+     *      cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        new LoadTest().run();
+    }
+
+    private void run() throws Exception {
+        final long start = System.nanoTime();
+        final long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        final long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        final List<Client> all = new ArrayList<Client>();
+        for (int i = 0; i < clients; i++) {
+            final Client client = new Client(measureFrom, end);
+            client.setName("load-client-" + i);
+            client.start();
+            all.add(client);
+        }
+        int count = 0;
+        long failures = 0;
+        long busy = 0;
+        for (Client client : all) {
+            client.join();
+            count += client.count;
+            failures += client.failures;
+            busy += client.busy;
+        }
+        final long[] latencies = new long[count];
+        int at = 0;
+        for (Client client : all) {
+            System.arraycopy(client.latencies, 0, latencies, at, client.count);
+            at += client.count;
+        }
+        Arrays.sort(latencies);
+        report(latencies, failures, busy);
+    }
+
+    /**
+     * Prints the results and writes them to target/load-label.json.
+     * @param latencies sorted latencies of the measured requests, in nanos
+     * @param failures measured requests without a 2xx response
+     * @param busy failures that were 503, turned away by the request pool
+     * @throws IOException if the file cannot be written
+     */
+    private void report(long[] latencies, long failures, long busy)
+            throws IOException {
+        final String json = String.format(Locale.ROOT, "{\"label\": \"%s\", "
+                + "\"clients\": %d, \"seconds\": %d, \"writes\": %.2f, "
+                + "\"requests\": %d, \"failures\": %d, \"busy\": %d, "
+                + "\"throughput\": %.1f, \"p50Millis\": %.2f, "
+                + "\"p99Millis\": %.2f, \"maxMillis\": %.2f}%n",
+                label, clients, seconds, writes, latencies.length, failures,
+                busy,
+                latencies.length / (double) seconds,
+                millis(percentile(latencies, 0.50)),
+                millis(percentile(latencies, 0.99)),
+                millis(percentile(latencies, 1.0)));
+        System.out.print(json);
+        final File file = new File("target", "load-" + label + ".json");
+        file.getParentFile().mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            out.write(json);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Sends one request and reads the whole response, so that the
+     * connection is reused.
+     * @return HTTP status
+     * @throws IOException on a connection failure
+     */
+    private int send() throws IOException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final boolean write = random.nextDouble() < writes;
+        // rows can only be edited by their owner; the seeded administrator
+        // owns the even timesheets of the dataset
+        final int id = write
+                ? FIRST_TIMESHEET + 1 + 2 * random.nextInt(TIMESHEETS / 2)
+                : FIRST_TIMESHEET + random.nextInt(TIMESHEETS);
+        final HttpURLConnection conn;
+        if (write) {
+            final int project = 1 + random.nextInt(ROWS);
+            conn = open(url + "/rows/" + id + "/" + project + "/WP" + project
+                    + "/days/" + random.nextInt(7));
+            conn.setRequestMethod("PUT");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(Integer.toString(random.nextInt(241))
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        } else {
+            conn = open(url + "/timesheets/" + id);
+        }
+        final int status = conn.getResponseCode();
+        final InputStream in = status < 400 ? conn.getInputStream()
+                : conn.getErrorStream();
+        if (in != null) {
+            try {
+                final byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    continue;
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status;
+    }
+
+    private HttpURLConnection open(String target) throws IOException {
+        final HttpURLConnection conn =
+                (HttpURLConnection) new URL(target).openConnection();
+        conn.setRequestProperty("Authorization", "Bearer " + token);
+        conn.setRequestProperty("Accept", "application/json");
+        return conn;
+    }
+
+    /**
+     * One client sending requests back to back until the end of the run.
+     */
+    private final class Client extends Thread {
+        private final long measureFrom;
+        private final long end;
+        private long[] latencies = new long[1024];
+        private int count;
+        private long failures;
+        private long busy;
+
+        Client(long measureFrom, long end) {
+            this.measureFrom = measureFrom;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            while (now - end < 0) {
+                int status;
+                try {
+                    status = send();
+                } catch (IOException e) {
+                    status = 0;
+                }
+                final long done = System.nanoTime();
+                if (now - measureFrom >= 0) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = done - now;
+                    if (status / 100 != 2) {
+                        failures++;
+                    }
+                    if (status == 503) {
+                        busy++;
+                    }
+                }
+                now = done;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ca.bcit.infosys.manager;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.bcit.infosys.employee.Credentials;
+
+/**
+ * Logs in through EmployeeManager.verifyUser against a Credentials table
+ * of growing size, with the full-table scan it replaced as the baseline.
+ * The table lives in an in-memory H2 database in MySQL mode, indexed as
+ * timesheet_system_asn3.sql indexes it.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginBenchmark {
+
+    /** Rows in the Credentials table. */
+    @Param({"100", "1000", "10000"})
+    private int employeeCount;
+
+    private JdbcDataSource dataSource;
+
+    /** Keeps the in-memory database open between connections. */
+    private Connection keepAlive;
+
+    private CredentialsManager credentialsManager;
+
+    private EmployeeManager employeeManager;
+
+    /** The last employee seeded, the worst case for a scan. */
+    private Credentials login;
+
+    /**
+     * Creates and fills the Credentials table and wires the managers to it.
+     * @throws Exception if the database or the injection points fail
+     */
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:login" + employeeCount + ";MODE=MySQL");
+        keepAlive = dataSource.getConnection();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE Credentials("
+                    + "employeeNumber INT NOT NULL UNIQUE, "
+                    + "userName VARCHAR(20) NOT NULL UNIQUE, "
+                    + "password VARCHAR(20) NOT NULL, "
+                    + "token BINARY(32) NOT NULL)");
+        }
+        try (PreparedStatement stmt = keepAlive.prepareStatement(
+                "INSERT INTO Credentials VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= employeeCount; i++) {
+                stmt.setInt(1, i);
+                stmt.setString(2, "user" + i);
+                stmt.setString(3, "password" + i);
+                stmt.setBytes(4, new byte[32]);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        credentialsManager = new CredentialsManager();
+        inject(credentialsManager, "dataSource", dataSource);
+        employeeManager = new EmployeeManager();
+        inject(employeeManager, "credentialsManager", credentialsManager);
+        login = new Credentials(employeeCount, "user" + employeeCount,
+                "password" + employeeCount);
+    }
+
+    /**
+     * Drops the database.
+     * @throws SQLException if it cannot be closed
+     */
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        keepAlive.close();
+    }
+
+    /**
+     * Verifies the login by its unique userName.
+     * @return whether the login is valid
+     */
+    @Benchmark
+    public boolean verifyUser() {
+        return employeeManager.verifyUser(login);
+    }
+
+    /**
+     * Verifies the login the way verifyUser used to, by loading every row
+     * and comparing each one.
+     * @return whether the login is valid
+     */
+    @Benchmark
+    public boolean fullScan() {
+        final List<Credentials> credentialsList =
+                credentialsManager.getCredentialsList();
+        for (Credentials c : credentialsList) {
+            if (c.equals(login)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void inject(Object target, String name, Object value)
+            throws ReflectiveOperationException {
+        final Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -0,0 +1,118 @@
+package ca.bcit.infosys.restful;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.stream.JsonGenerator;
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.bcit.infosys.timesheet.SampleTimesheets;
+import ca.bcit.infosys.timesheet.Timesheet;
+
+/**
+ * Writes a page of timesheets as GET /timesheets does, with and without
+ * the derived fields, against reflective JSON-B binding of every getter
+ * as the baseline.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainJsonWriterBenchmark {
+
+    /** Timesheets in the page. */
+    @Param({"1", "20"})
+    private int pageSize;
+
+    private Timesheet[] page;
+
+    private final DomainJsonWriter writer = new DomainJsonWriter();
+
+    private Jsonb jsonb;
+
+    /** Response buffer, reused so that only the writer allocates. */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+
+    /**
+     * Creates the page.
+     */
+    @Setup
+    public void setUp() {
+        page = SampleTimesheets.page(pageSize);
+        jsonb = JsonbBuilder.create();
+    }
+
+    /**
+     * Releases the JSON-B instance.
+     * @throws Exception if it cannot be closed
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        jsonb.close();
+    }
+
+    /**
+     * Writes the stored fields only, the default response.
+     * @return bytes written
+     * @throws IOException never; the buffer is in memory
+     */
+    @Benchmark
+    public int stored() throws IOException {
+        out.reset();
+        writer.writeTo(page, Timesheet[].class, Timesheet[].class, null,
+                MediaType.APPLICATION_JSON_TYPE, null, out);
+        return out.size();
+    }
+
+    /**
+     * Writes the stored and derived fields, as with ?derived=true.
+     * @return bytes written
+     */
+    @Benchmark
+    public int derived() {
+        out.reset();
+        final JsonGenerator gen = DomainJsonWriter.GENERATORS.createGenerator(
+                out, StandardCharsets.UTF_8);
+        gen.writeStartArray();
+        for (Timesheet timesheet : page) {
+            DomainJsonWriter.writeTimesheet(gen, null, timesheet, true);
+        }
+        gen.writeEnd();
+        gen.close();
+        return out.size();
+    }
+
+    /**
+     * Writes every bean property by reflection, as the container's default
+     * JSON-B provider did before DomainJsonWriter.
+     * @return bytes written
+     */
+    @Benchmark
+    public int jsonbBaseline() {
+        out.reset();
+        jsonb.toJson(page, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,95 @@
+package ca.bcit.infosys.timesheet;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads and writes the hours packed into TimesheetRow.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedHoursBenchmark {
+
+    private TimesheetRow row;
+
+    private int charge;
+
+    /**
+     * Creates a row with hours on every day.
+     */
+    @Setup
+    public void setUp() {
+        row = new TimesheetRow(1, "WP1");
+        row.setDecihours(new int[] {0, 0, 80, 75, 80, 80, 85});
+    }
+
+    /**
+     * Reads every day as decihours.
+     * @return sum of the days
+     */
+    @Benchmark
+    public int getDecihours() {
+        int sum = 0;
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            sum += row.getDecihour(d);
+        }
+        return sum;
+    }
+
+    /**
+     * Writes every day as decihours, keeping the row total up to date.
+     * @return packed hours
+     */
+    @Benchmark
+    public long setDecihours() {
+        charge = (charge + 1) % 241;
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            row.setDecihour(d, charge);
+        }
+        return row.getPackedHours();
+    }
+
+    /**
+     * Reads every day as BigDecimal hours, as the JSF table does.
+     * @param bh sink for the hours
+     */
+    @Benchmark
+    public void getBigDecimalHours(Blackhole bh) {
+        bh.consume(row.getSat());
+        bh.consume(row.getSun());
+        bh.consume(row.getMon());
+        bh.consume(row.getTue());
+        bh.consume(row.getWed());
+        bh.consume(row.getThu());
+        bh.consume(row.getFri());
+    }
+
+    /**
+     * Writes one day from BigDecimal hours, as a form submit does.
+     * @return stored decihours
+     */
+    @Benchmark
+    public int setBigDecimalHour() {
+        row.setMon(new BigDecimal("7.5"));
+        return row.getDecihour(TimesheetRow.MON);
+    }
+}
@@ -0,0 +1,60 @@
+package ca.bcit.infosys.timesheet;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.bcit.infosys.employee.Employee;
+
+/**
+ * Builds the same synthetic timesheets for every benchmark, so that runs
+ * can be compared.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+public final class SampleTimesheets {
+
+    /** Rows on a busy week's timesheet. */
+    public static final int ROWS = 12;
+
+    private SampleTimesheets() {
+    }
+
+    /**
+     * Creates a full week spread over ROWS projects with notes, half hours
+     * and an empty weekend.
+     * @param id timesheet id
+     * @return timesheet with its employee and rows
+     */
+    public static Timesheet week(int id) {
+        final List<TimesheetRow> rows = new ArrayList<TimesheetRow>();
+        for (int r = 0; r < ROWS; r++) {
+            final TimesheetRow row = new TimesheetRow(100 + r, "WP" + r);
+            row.setNotes("Work package " + r + " – design review");
+            for (int d = TimesheetRow.MON; d <= TimesheetRow.LAST_DAY; d++) {
+                row.setDecihour(d, (r + d) % 3 == 0 ? 5 : 7);
+            }
+            rows.add(row);
+        }
+        final Timesheet timesheet = new Timesheet(
+                new Employee(id, "Employee " + id, "user" + id, false),
+                LocalDate.of(2021, 11, 12), rows);
+        timesheet.setTimesheetId(id);
+        timesheet.setVersion(3);
+        return timesheet;
+    }
+
+    /**
+     * Creates a page of timesheets, as returned by GET /timesheets.
+     * @param size number of timesheets
+     * @return timesheets
+     */
+    public static Timesheet[] page(int size) {
+        final Timesheet[] page = new Timesheet[size];
+        for (int i = 0; i < size; i++) {
+            page[i] = week(i + 1);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,80 @@
+package ca.bcit.infosys.timesheet;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computes the totals of a busy week's timesheet.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimesheetTotalsBenchmark {
+
+    private Timesheet timesheet;
+
+    /**
+     * Creates the sample timesheet.
+     */
+    @Setup
+    public void setUp() {
+        timesheet = SampleTimesheets.week(1);
+    }
+
+    /**
+     * Totals the week.
+     * @return total hours
+     */
+    @Benchmark
+    public BigDecimal totalHours() {
+        return timesheet.getTotalHours();
+    }
+
+    /**
+     * Totals each day into a new array.
+     * @return daily totals
+     */
+    @Benchmark
+    public int[] dailyDecihours() {
+        return timesheet.getDailyDecihours();
+    }
+
+    /**
+     * Totals each day without allocating.
+     * @return sum of the daily totals
+     */
+    @Benchmark
+    public int dailyDecihourIndexed() {
+        int sum = 0;
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            sum += timesheet.getDailyDecihour(d);
+        }
+        return sum;
+    }
+
+    /**
+     * Checks that the week adds up to a full work week.
+     * @return true if valid
+     */
+    @Benchmark
+    public boolean isValid() {
+        return timesheet.isValid();
+    }
+}
@@ -0,0 +1,23 @@
+-- Synthetic dataset for LoadTest: timesheets 101 to 1100, each with five
+-- rows of 8 hours, owned alternately by the two seeded employees.
+-- Run once, after timesheet_system_asn3.sql, with MySQL 8 or later.
+USE timesheet_system_asn3;
+
+SET SESSION cte_max_recursion_depth = 10000;
+
+INSERT INTO Timesheets (employeeNumber, endDate, timesheetId, version)
+WITH RECURSIVE n (i) AS (
+    SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 1000
+)
+SELECT 1 + i % 2, DATE_ADD(DATE'2000-01-07', INTERVAL i WEEK), 100 + i, 0
+FROM n;
+
+INSERT INTO TimesheetRows (timesheetId, projectId, workPackageId,
+    sat, sun, mon, tue, wed, thu, fri, notes)
+WITH RECURSIVE n (i) AS (
+    SELECT 0 UNION ALL SELECT i + 1 FROM n WHERE i < 4999
+)
+SELECT 101 + i DIV 5, 1 + i % 5, CONCAT("WP", 1 + i % 5), 0, 0,
+    IF(i % 5 = 0, 80, 0), IF(i % 5 = 1, 80, 0), IF(i % 5 = 2, 80, 0),
+    IF(i % 5 = 3, 80, 0), IF(i % 5 = 4, 80, 0), "Load test"
+FROM n;
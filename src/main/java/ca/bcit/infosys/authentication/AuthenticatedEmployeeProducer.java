@@ -31,4 +31,13 @@ public class AuthenticatedEmployeeProducer {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Initializes authenticated employee from a verified signed token,
+     * without a database lookup
+     * @param employee built from the token claims
+     */
+    public void handleAuthenticationEvent(@Observes @AuthenticatedEmployee Employee employee) {
+        authEmployee = employee;
+    }
 }
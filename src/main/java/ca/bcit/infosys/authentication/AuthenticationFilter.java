@@ -18,6 +18,7 @@ import javax.ws.rs.ext.Provider;
 
 import ca.bcit.infosys.manager.CredentialsManager;
 import ca.bcit.infosys.employee.Credentials;
+import ca.bcit.infosys.employee.Employee;
 
 @Secured
 @Provider
@@ -30,9 +31,28 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     @Inject
     private CredentialsManager credManager;
     
+    @Inject
+    private TokenCache tokenCache;
+    
+    @Inject
+    private TokenKeyStore tokenKeys;
+    
     @Inject
     @AuthenticatedEmployee
     private Event<String> authEvent;
+    
+    @Inject
+    @AuthenticatedEmployee
+    private Event<Employee> employeeEvent;
+
+    private TokenBuilder tokenBuilder;
+
+    /**
+     * Constructor initializes TokenBuilder member
+     */
+    public AuthenticationFilter() {
+        tokenBuilder = new TokenBuilder();
+    }
 
     /**
      * Extracts and validates authorization header and token
@@ -83,9 +103,24 @@ public class AuthenticationFilter implements ContainerRequestFilter {
      * @throws Exception if invalid token
      */
     private void validateToken(String token) throws Exception {
-        final Credentials c = credManager.getCredentialByToken(token);
+        if (tokenBuilder.isSigned(token)) {
+            final Employee e = tokenBuilder.verify(token, tokenKeys,
+                    System.currentTimeMillis() / 1000);
+            if (e == null) {
+                throw new AuthenticationException();
+            }
+            employeeEvent.fire(e);
+            return;
+        }
+        Credentials c = tokenCache.get(token);
         if (c == null) {
-            throw new AuthenticationException();
+            // taken before the read, so a revocation during it is not lost
+            final long stamp = tokenCache.stamp();
+            c = credManager.getCredentialByToken(token);
+            if (c == null) {
+                throw new AuthenticationException();
+            }
+            tokenCache.put(token, c, stamp);
         }
         authEvent.fire(c.getUserName());
     }
@@ -1,18 +1,32 @@
 package ca.bcit.infosys.authentication;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import ca.bcit.infosys.employee.Employee;
 
 
 public class TokenBuilder {
     private static final String ALGORITHM = "SHA-256";
-    private MessageDigest messageDigest;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final char SEPARATOR = '.';
+    private static final String CLAIM_SEPARATOR = "\n";
 
-    public TokenBuilder() throws NoSuchAlgorithmException {
-        messageDigest = MessageDigest.getInstance(ALGORITHM);
-    }
+    /**
+     * MessageDigest and Mac are not thread-safe, so each thread keeps its own
+     * instances; TokenBuilder itself is then safe to share.
+     */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            ThreadLocal.withInitial(TokenBuilder::newDigest);
+    private static final ThreadLocal<Mac> MAC =
+            ThreadLocal.withInitial(TokenBuilder::newMac);
 
     /**
      * Encrypts password string into a byte array
@@ -23,7 +37,7 @@ public class TokenBuilder {
         final byte[] pwArr = pw.getBytes(StandardCharsets.UTF_8);
         byte[] hashed = new byte[] {};
         try {
-            hashed = messageDigest.digest(pwArr);
+            hashed = DIGEST.get().digest(pwArr);
         } finally {
             Arrays.fill(pwArr, (byte) 0);
         }
@@ -37,7 +51,125 @@ public class TokenBuilder {
      * @return true if match, else false
      */
     public boolean validate(String incoming, String actual) {
-        return incoming.equals(actual);
+        return MessageDigest.isEqual(incoming.getBytes(StandardCharsets.UTF_8),
+                actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Issues a stateless token carrying the employee number, role, expiry,
+     * name and user name, signed with HMAC-SHA256. The token is
+     * base64url(claims) '.' base64url(signature), where claims are the key
+     * id, employee number, role, expiry (epoch seconds), employee name and
+     * user name, one per line. Line breaks in the name are replaced by
+     * spaces.
+     * A token cannot be revoked: it stays valid until it expires, even if
+     * the password changes, the employee is demoted or deleted.
+     * @param keyId alias of the signing key
+     * @param key signing key
+     * @param employee owner of the token
+     * @param expiresAt expiry in epoch seconds
+     * @return signed token
+     * @throws GeneralSecurityException if the key cannot be used
+     */
+    public String sign(String keyId, SecretKey key, Employee employee,
+            long expiresAt) throws GeneralSecurityException {
+        final String name = employee.getEmployeeName() == null ? ""
+                : employee.getEmployeeName().replaceAll("[\\r\\n]", " ");
+        final String claims = keyId + CLAIM_SEPARATOR
+                + employee.getEmployeeNumber() + CLAIM_SEPARATOR
+                + (employee.getIsAdmin() ? Permission.ADMIN : Permission.USER)
+                + CLAIM_SEPARATOR + expiresAt + CLAIM_SEPARATOR
+                + name + CLAIM_SEPARATOR + employee.getUserName();
+        final byte[] payload = claims.getBytes(StandardCharsets.UTF_8);
+        final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + SEPARATOR
+                + encoder.encodeToString(mac(key, payload));
+    }
+
+    /**
+     * Checks whether a token is a signed token rather than a hex token.
+     * @param token bearer token
+     * @return true if the token has the signed token layout
+     */
+    public boolean isSigned(String token) {
+        return token.indexOf(SEPARATOR) > 0;
+    }
+
+    /**
+     * Verifies a signed token with an HMAC computation only.
+     * @param token signed token
+     * @param keys keys accepted for verification
+     * @param now current time in epoch seconds
+     * @return the employee the token was issued to, with number, name, user
+     *         name, admin flag and permission set, or null if the token is
+     *         malformed, forged or expired
+     */
+    public Employee verify(String token, TokenKeyStore keys, long now) {
+        final int dot = token.indexOf(SEPARATOR);
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            final Base64.Decoder decoder = Base64.getUrlDecoder();
+            final byte[] payload = decoder.decode(token.substring(0, dot));
+            final byte[] signature = decoder.decode(token.substring(dot + 1));
+            final String[] claims = new String(payload, StandardCharsets.UTF_8)
+                    .split(CLAIM_SEPARATOR, 6);
+            if (claims.length != 6) {
+                return null;
+            }
+            final SecretKey key = keys.getKey(claims[0]);
+            if (key == null
+                    || !MessageDigest.isEqual(mac(key, payload), signature)
+                    || Long.parseLong(claims[3]) < now) {
+                return null;
+            }
+            final Permission permission = Permission.valueOf(claims[2]);
+            final Employee employee = new Employee(Integer.parseInt(claims[1]),
+                    claims[4], claims[5], permission == Permission.ADMIN);
+            employee.setPermission(permission);
+            return employee;
+        } catch (final IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the HMAC of a payload.
+     * @param key HMAC key
+     * @param payload bytes to authenticate
+     * @return signature
+     * @throws GeneralSecurityException if the key cannot be used
+     */
+    private static byte[] mac(SecretKey key, byte[] payload)
+            throws GeneralSecurityException {
+        final Mac mac = MAC.get();
+        mac.init(key);
+        return mac.doFinal(payload);
+    }
+
+    /**
+     * Creates a per-thread MessageDigest.
+     * @return new SHA-256 digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a per-thread Mac.
+     * @return new HmacSHA256 Mac
+     */
+    private static Mac newMac() {
+        try {
+            return Mac.getInstance(MAC_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
 }
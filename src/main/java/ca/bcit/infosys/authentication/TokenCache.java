@@ -0,0 +1,282 @@
+package ca.bcit.infosys.authentication;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import ca.bcit.infosys.employee.Credentials;
+
+/**
+ * Application-wide cache of validated bearer tokens, so that secured
+ * requests can be authenticated without a Credentials lookup.
+ * Entries expire after a fixed time to live and the cache is bounded in
+ * size. Tokens are spread over segments by hash, each with its own lock
+ * and its own least recently used order, so concurrent requests only
+ * contend when their tokens share a segment; a full segment evicts its
+ * least recently used entry.
+ * A lookup races with credential changes: a row read before an
+ * invalidation must not be cached after it, or a revoked token would stay
+ * valid until it expires. Loaders therefore take a stamp before they read,
+ * and put drops the credentials if anything was invalidated since.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@ApplicationScoped
+public class TokenCache implements TokenCacheMXBean {
+
+    /** Time an entry stays valid after it is cached. */
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /** Maximum number of cached tokens. */
+    private static final int MAX_SIZE = 10000;
+
+    /** Number of segments; a power of two. */
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    /** Incremented by every invalidation; see stamp(). */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache of MAX_SIZE tokens.
+     */
+    public TokenCache() {
+        this(MAX_SIZE, SEGMENTS);
+    }
+
+    /**
+     * Creates a cache with the given bound.
+     * @param maxSize maximum number of cached tokens
+     * @param segmentCount number of segments, a power of two
+     */
+    TokenCache(int maxSize, int segmentCount) {
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount);
+        }
+    }
+
+    /**
+     * Gets the credentials cached for a token.
+     * @param token hex bearer token
+     * @return cached credentials, or null if absent or expired
+     */
+    public Credentials get(String token) {
+        final String key = token.toLowerCase();
+        final Credentials credentials = segmentFor(key).get(key);
+        if (credentials == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return credentials;
+    }
+
+    /**
+     * Gets the stamp a loader must take before it reads a token's
+     * credentials from the database and pass to put.
+     * @return current invalidation generation
+     */
+    public long stamp() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the credentials a token resolved to, unless credentials were
+     * invalidated since the stamp was taken, in which case the row may
+     * already be stale.
+     * @param token hex bearer token
+     * @param credentials principal of the token
+     * @param stamp taken with stamp() before the credentials were read
+     */
+    public void put(String token, Credentials credentials, long stamp) {
+        final String key = token.toLowerCase();
+        segmentFor(key).put(key, credentials, stamp);
+    }
+
+    /**
+     * Drops every cached token belonging to an employee. Called whenever
+     * that employee's credentials change or are deleted.
+     * @param employeeNumber employee whose tokens are dropped
+     */
+    public void invalidate(int employeeNumber) {
+        // bumped before any segment is visited, so a put that checks the
+        // stamp after a segment was cleared is dropped
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.invalidate(employeeNumber);
+        }
+    }
+
+    /**
+     * Drops every cached token.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return hit count
+     */
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that fell through to the database.
+     * @return miss count
+     */
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries removed to bound the cache.
+     * @return eviction count
+     */
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of cached tokens.
+     * @return cache size
+     */
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String key) {
+        final int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * A bounded LRU map of tokens with an index of the tokens of each
+     * employee, so invalidation does not scan the segment.
+     */
+    private final class Segment {
+        private final int maxSize;
+
+        /** Cached principals keyed by lower case hex token, in access order. */
+        private final LinkedHashMap<String, Entry> entries =
+                new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<String, Entry> eldest) {
+                        if (size() > maxSize) {
+                            unindex(eldest.getKey(), eldest.getValue());
+                            evictions.increment();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        /** Tokens cached in this segment by employee number. */
+        private final Map<Integer, Set<String>> byEmployee =
+                new HashMap<Integer, Set<String>>();
+
+        Segment(int maxSize) {
+            this.maxSize = Math.max(1, maxSize);
+        }
+
+        synchronized Credentials get(String key) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(System.nanoTime())) {
+                entries.remove(key);
+                unindex(key, entry);
+                return null;
+            }
+            return entry.credentials;
+        }
+
+        synchronized void put(String key, Credentials credentials,
+                long stamp) {
+            if (stamp != generation.get()) {
+                return;
+            }
+            final Entry old = entries.put(key,
+                    new Entry(credentials, System.nanoTime() + TTL_NANOS));
+            if (old != null) {
+                unindex(key, old);
+            }
+            byEmployee.computeIfAbsent(credentials.getEmployeeNumber(),
+                    n -> new HashSet<String>()).add(key);
+        }
+
+        synchronized void invalidate(int employeeNumber) {
+            final Set<String> keys = byEmployee.remove(employeeNumber);
+            if (keys != null) {
+                for (String key : keys) {
+                    entries.remove(key);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            byEmployee.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private void unindex(String key, Entry entry) {
+            final Integer employeeNumber =
+                    entry.credentials.getEmployeeNumber();
+            final Set<String> keys = byEmployee.get(employeeNumber);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                byEmployee.remove(employeeNumber);
+            }
+        }
+    }
+
+    /**
+     * A cached principal and its expiry time.
+     */
+    private static final class Entry {
+        private final Credentials credentials;
+        private final long expiresAt;
+
+        Entry(Credentials credentials, long expiresAt) {
+            this.credentials = credentials;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ca.bcit.infosys.authentication;
+
+/**
+ * Counters of the bearer token cache, as seen through JMX.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+public interface TokenCacheMXBean {
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return hit count
+     */
+    long getHits();
+
+    /**
+     * Gets the number of lookups that fell through to the database.
+     * @return miss count
+     */
+    long getMisses();
+
+    /**
+     * Gets the number of entries removed to bound the cache.
+     * @return eviction count
+     */
+    long getEvictions();
+
+    /**
+     * Gets the number of cached tokens.
+     * @return cache size
+     */
+    int getSize();
+}
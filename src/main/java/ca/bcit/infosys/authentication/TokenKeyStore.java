@@ -0,0 +1,142 @@
+package ca.bcit.infosys.authentication;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * HMAC keys used to sign and verify stateless bearer tokens, read from a
+ * local JCEKS keystore of secret keys. Signed tokens are only issued when
+ * the keystore is configured through system properties:
+ * <ul>
+ * <li>timesheet.token.keystore - path of the keystore file</li>
+ * <li>timesheet.token.keystore.password - keystore and key password</li>
+ * <li>timesheet.token.key - alias of the key used to sign new tokens</li>
+ * <li>timesheet.token.ttl.minutes - token lifetime, 60 by default</li>
+ * </ul>
+ * Every key in the keystore is accepted for verification. Keys are rotated
+ * by adding a new key to the file and pointing timesheet.token.key at it;
+ * the file is re-read when it changes, so tokens signed with the old key
+ * stay valid until it is removed.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@ApplicationScoped
+public class TokenKeyStore {
+
+    /** Minimum time between checks of the keystore file for changes. */
+    private static final long RELOAD_CHECK_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final File file;
+    private final char[] password;
+    private final String activeKeyId;
+    private final long ttlSeconds;
+
+    private volatile Map<String, SecretKey> keys =
+            Collections.<String, SecretKey>emptyMap();
+    /** Modification time of the file at the last load, failed or not. */
+    private volatile long attemptedModified = -1;
+    private volatile long lastCheck;
+
+    /**
+     * Constructor reads the keystore location from system properties.
+     */
+    public TokenKeyStore() {
+        final String path = System.getProperty("timesheet.token.keystore");
+        file = path == null ? null : new File(path);
+        password = System.getProperty("timesheet.token.keystore.password", "")
+                .toCharArray();
+        activeKeyId = System.getProperty("timesheet.token.key");
+        lastCheck = System.nanoTime() - RELOAD_CHECK_NANOS - 1;
+        ttlSeconds = TimeUnit.MINUTES.toSeconds(Long.getLong(
+                "timesheet.token.ttl.minutes", 60));
+    }
+
+    /**
+     * Checks whether signed tokens should be issued.
+     * @return true if a keystore and signing key are configured
+     */
+    public boolean isEnabled() {
+        return file != null && activeKeyId != null
+                && getKey(activeKeyId) != null;
+    }
+
+    /**
+     * Gets the alias of the key that signs new tokens.
+     * @return active key id
+     */
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    /**
+     * Gets the lifetime of newly issued tokens.
+     * @return time to live in seconds
+     */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Gets a key by alias, re-reading the keystore if the file changed.
+     * A file that cannot be read is not retried until it changes again,
+     * and the keys read before it stay in use.
+     * @param keyId alias of the key
+     * @return the key, or null if unknown
+     */
+    public SecretKey getKey(String keyId) {
+        if (file == null) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        if (now - lastCheck > RELOAD_CHECK_NANOS) {
+            lastCheck = now;
+            if (file.lastModified() != attemptedModified) {
+                reload();
+            }
+        }
+        return keys.get(keyId);
+    }
+
+    /**
+     * Reads every secret key of the keystore file.
+     */
+    private synchronized void reload() {
+        final long modified = file.lastModified();
+        if (modified == attemptedModified) {
+            return;
+        }
+        attemptedModified = modified;
+        try {
+            final KeyStore store = KeyStore.getInstance("JCEKS");
+            try (InputStream in = new FileInputStream(file)) {
+                store.load(in, password);
+            }
+            final Map<String, SecretKey> loaded = new HashMap<String, SecretKey>();
+            final Enumeration<String> aliases = store.aliases();
+            while (aliases.hasMoreElements()) {
+                final String alias = aliases.nextElement();
+                final Key key = store.getKey(alias, password);
+                if (key instanceof SecretKey) {
+                    loaded.put(alias, (SecretKey) key);
+                }
+            }
+            keys = loaded;
+        } catch (final IOException | GeneralSecurityException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ca.bcit.infosys.controller;
 
 import java.io.Serializable;
+import java.util.Map;
 
 import javax.enterprise.context.Conversation;
 import javax.enterprise.context.ConversationScoped;
@@ -70,7 +71,10 @@ public class LoginController implements Serializable {
                 context.addMessage(null, new FacesMessage("Error: Invalid Login ID & password combination."));
                 return null;
             }
-            context.getExternalContext().getSessionMap().put("employeeNumber", employee.getUserName());
+            final Map<String, Object> session =
+                    context.getExternalContext().getSessionMap();
+            session.put("employeeNumber", employee.getUserName());
+            session.put("isAdmin", employee.getIsAdmin());
             conversation.end();
             return "login";
         }
@@ -1,6 +1,7 @@
 package ca.bcit.infosys.controller;
 
 import java.io.Serializable;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -12,6 +13,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import ca.bcit.infosys.manager.EmployeeManager;
+import ca.bcit.infosys.manager.StaleTimesheetException;
 import ca.bcit.infosys.manager.TimesheetManager;
 import ca.bcit.infosys.manager.TimesheetRowManager;
 import ca.bcit.infosys.timesheet.Timesheet;
@@ -183,7 +185,15 @@ public class TimesheetController implements Serializable {
             }
         }
 
-        timesheetManager.addTimesheet(editTimesheet);
+        try {
+            timesheetManager.addTimesheet(editTimesheet);
+        } catch (final SQLException e) {
+            final FacesContext context = FacesContext.getCurrentInstance();
+            context.addMessage(null,
+                    new FacesMessage("Error: the timesheet could not be "
+                            + "saved. Try again."));
+            return null;
+        }
         editableTimesheet = null;
         conversation.end();
         return goToTimesheetListPage();
@@ -198,7 +208,24 @@ public class TimesheetController implements Serializable {
         Timesheet editTimesheet = editableTimesheet.getTimesheet();
         editTimesheet.setEmployee(currentEmployee);
 
-        tsRowManager.editRow(editTimesheet.getTimesheetId(), editTimesheet.getDetails());
+        try {
+            if (!tsRowManager.editRow(editTimesheet.getTimesheetId(),
+                    editTimesheet.getDetails(), editTimesheet.getVersion())) {
+                return null;
+            }
+        } catch (final StaleTimesheetException e) {
+            final FacesContext context = FacesContext.getCurrentInstance();
+            context.addMessage(null,
+                    new FacesMessage("Error: the timesheet was changed by "
+                            + "someone else. Reload it and try again."));
+            return null;
+        } catch (final SQLException e) {
+            final FacesContext context = FacesContext.getCurrentInstance();
+            context.addMessage(null,
+                    new FacesMessage("Error: the timesheet could not be "
+                            + "saved. Try again."));
+            return null;
+        }
         editableTimesheet = null;
         conversation.end();
         return goToTimesheetListPage();
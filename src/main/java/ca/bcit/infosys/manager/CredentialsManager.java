@@ -1,7 +1,6 @@
 package ca.bcit.infosys.manager;
 
 import java.io.Serializable;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -10,7 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.Resource;
-import javax.enterprise.context.ConversationScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
@@ -19,6 +18,7 @@ import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
 import ca.bcit.infosys.authentication.TokenBuilder;
+import ca.bcit.infosys.authentication.TokenCache;
 import ca.bcit.infosys.employee.Credentials;
 import ca.bcit.infosys.employee.Employee;
 
@@ -29,7 +29,7 @@ import ca.bcit.infosys.employee.Employee;
  * @version 1.0
  */
 @Named("credentialsManager")
-@ConversationScoped
+@ApplicationScoped
 public class CredentialsManager implements Serializable {
     
     private static final long serialVersionUID = 14L;
@@ -38,6 +38,12 @@ public class CredentialsManager implements Serializable {
     @Inject
     EmployeeManager employeeManager;
     
+    /**
+     * Cache of validated tokens, invalidated when credentials change
+     */
+    @Inject
+    private TokenCache tokenCache;
+    
     /**
      * Datasource for the project
      */
@@ -48,12 +54,7 @@ public class CredentialsManager implements Serializable {
      * Constructor initializes TokenBuilder
      */
     public CredentialsManager() {
-        try {
-            tokenBuilder = new TokenBuilder();
-        } catch (final NoSuchAlgorithmException e) {
-            tokenBuilder = null;
-            e.printStackTrace();
-        }
+        tokenBuilder = new TokenBuilder();
     }
     /**
      * Gets the credentials of an employee with a specified employee number.
@@ -269,6 +270,7 @@ public class CredentialsManager implements Serializable {
                             + "Credentials WHERE employeeNumber = ?");
                     stmt.setInt(1, employee.getEmployeeNumber());
                     stmt.executeUpdate();
+                    tokenCache.invalidate(employee.getEmployeeNumber());
                 } finally {
                     if (stmt != null) {
                         stmt.close();
@@ -304,6 +306,7 @@ public class CredentialsManager implements Serializable {
                     stmt.setString(password, pw);
                     stmt.setInt(employeeNumber, employee.getEmployeeNumber());
                     stmt.executeUpdate();
+                    tokenCache.invalidate(employee.getEmployeeNumber());
                 } finally {
                     if (stmt != null) {
                         stmt.close();
@@ -339,6 +342,7 @@ public class CredentialsManager implements Serializable {
                     stmt.setString(username, user);
                     stmt.setInt(employeeNumber, employee.getEmployeeNumber());
                     stmt.executeUpdate();
+                    tokenCache.invalidate(employee.getEmployeeNumber());
                 } finally {
                     if (stmt != null) {
                         stmt.close();
@@ -422,6 +426,7 @@ public class CredentialsManager implements Serializable {
                     stmt.setString(user, credentials.getUserName());
                     stmt.setString(pw, credentials.getPassword());
                     stmt.executeUpdate();
+                    tokenCache.invalidate(id);
                 } finally {
                     if (stmt != null) {
                         stmt.close();
@@ -0,0 +1,241 @@
+package ca.bcit.infosys.manager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import ca.bcit.infosys.employee.Employee;
+
+/**
+ * Application-wide read-through cache of employees, keyed by employee
+ * number and by user name. Entries expire after a fixed time to live and
+ * the cache is bounded in size; the least recently used entry is evicted
+ * first when it is full. EmployeeManager invalidates an employee whenever
+ * it writes one.
+ * Callers may modify the employees they get (for example to set a
+ * permission), so copies are handed out and stored.
+ * A load races with writes: a row read before an invalidation must not be
+ * cached after it. Loaders therefore take a stamp before they read, and
+ * put drops the employee if anything was invalidated since. The stamp is
+ * cache-wide rather than per employee, because a lookup by user name does
+ * not know the employee number until the row is read.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@ApplicationScoped
+public class EmployeeCache implements EmployeeCacheMXBean {
+
+    /** Time an entry stays valid after it is cached. */
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /** Maximum number of cached employees. */
+    private static final int MAX_SIZE = 1000;
+
+    /** Cached employees keyed by employee number, in access order. */
+    private final LinkedHashMap<Integer, Entry> byNumber =
+            new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, Entry> eldest) {
+                    if (size() > MAX_SIZE) {
+                        numbersByUserName.remove(
+                                eldest.getValue().employee.getUserName(),
+                                eldest.getKey());
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /** Employee numbers of the cached employees keyed by user name. */
+    private final Map<String, Integer> numbersByUserName =
+            new HashMap<String, Integer>();
+
+    /** Incremented by every invalidation; see stamp(). */
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Gets a cached employee by employee number.
+     * @param employeeNumber of the employee
+     * @return copy of the cached employee, or null if absent or expired
+     */
+    public synchronized Employee getByNumber(int employeeNumber) {
+        final Entry entry = byNumber.get(employeeNumber);
+        if (entry == null || entry.isExpired(System.nanoTime())) {
+            if (entry != null) {
+                remove(employeeNumber);
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(entry.employee);
+    }
+
+    /**
+     * Gets a cached employee by user name.
+     * @param userName of the employee
+     * @return copy of the cached employee, or null if absent or expired
+     */
+    public synchronized Employee getByUserName(String userName) {
+        final Integer employeeNumber = numbersByUserName.get(userName);
+        if (employeeNumber == null) {
+            misses++;
+            return null;
+        }
+        final Entry entry = byNumber.get(employeeNumber);
+        if (entry == null || !userName.equals(entry.employee.getUserName())) {
+            // the index outlived the entry or its user name
+            numbersByUserName.remove(userName, employeeNumber);
+            misses++;
+            return null;
+        }
+        return getByNumber(employeeNumber);
+    }
+
+    /**
+     * Gets the stamp a loader must take before it reads an employee from
+     * the database and pass to put.
+     * @return current invalidation generation
+     */
+    public synchronized long stamp() {
+        return generation;
+    }
+
+    /**
+     * Caches an employee just read from the database, unless an employee was
+     * invalidated since the stamp was taken, in which case the row may
+     * already be stale.
+     * @param employee loaded employee
+     * @param stamp taken with stamp() before the employee was read
+     */
+    public synchronized void put(Employee employee, long stamp) {
+        if (stamp != generation) {
+            return;
+        }
+        remove(employee.getEmployeeNumber());
+        byNumber.put(employee.getEmployeeNumber(),
+                new Entry(copy(employee), System.nanoTime() + TTL_NANOS));
+        numbersByUserName.put(employee.getUserName(),
+                employee.getEmployeeNumber());
+    }
+
+    /**
+     * Drops an employee. Called after the employee is added, edited or
+     * deleted.
+     * @param employeeNumber of the employee
+     */
+    public synchronized void invalidate(int employeeNumber) {
+        generation++;
+        remove(employeeNumber);
+        // a user name the employee no longer has may still point at it
+        numbersByUserName.values().removeIf(n -> n == employeeNumber);
+    }
+
+    /**
+     * Drops every cached employee.
+     */
+    public synchronized void clear() {
+        generation++;
+        byNumber.clear();
+        numbersByUserName.clear();
+    }
+
+    /**
+     * Removes an employee from both keys.
+     * @param employeeNumber of the employee
+     */
+    private void remove(int employeeNumber) {
+        final Entry entry = byNumber.remove(employeeNumber);
+        if (entry != null) {
+            numbersByUserName.remove(entry.employee.getUserName(),
+                    employeeNumber);
+        }
+    }
+
+    /**
+     * Copies an employee so that the cached instance is never shared.
+     * @param employee to copy
+     * @return copy without a permission
+     */
+    private static Employee copy(Employee employee) {
+        return new Employee(employee.getEmployeeNumber(),
+                employee.getEmployeeName(), employee.getUserName(),
+                employee.getIsAdmin());
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return hit count
+     */
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that fell through to the database.
+     * @return miss count
+     */
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the fraction of lookups answered from the cache.
+     * @return hit rate between 0 and 1, 0 before the first lookup
+     */
+    @Override
+    public synchronized double getHitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Gets the number of least recently used entries removed to bound the
+     * cache.
+     * @return eviction count
+     */
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of cached employees.
+     * @return cache size
+     */
+    @Override
+    public synchronized int getSize() {
+        return byNumber.size();
+    }
+
+    /**
+     * A cached employee and its expiry time.
+     */
+    private static final class Entry {
+        private final Employee employee;
+        private final long expiresAt;
+
+        Entry(Employee employee, long expiresAt) {
+            this.employee = employee;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ca.bcit.infosys.manager;
+
+/**
+ * Counters of the employee cache, as seen through JMX.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+public interface EmployeeCacheMXBean {
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     * @return hit count
+     */
+    long getHits();
+
+    /**
+     * Gets the number of lookups that fell through to the database.
+     * @return miss count
+     */
+    long getMisses();
+
+    /**
+     * Gets the fraction of lookups answered from the cache.
+     * @return hit rate between 0 and 1, 0 before the first lookup
+     */
+    double getHitRate();
+
+    /**
+     * Gets the number of least recently used entries removed to bound the
+     * cache.
+     * @return eviction count
+     */
+    long getEvictions();
+
+    /**
+     * Gets the number of cached employees.
+     * @return cache size
+     */
+    int getSize();
+}
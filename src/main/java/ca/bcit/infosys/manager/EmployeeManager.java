@@ -1,6 +1,8 @@
 package ca.bcit.infosys.manager;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -12,7 +14,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Resource;
-import javax.enterprise.context.ConversationScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.faces.context.FacesContext;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -30,7 +32,7 @@ import javax.sql.DataSource;
  *
  */
 @Named("employeeManager")
-@ConversationScoped
+@ApplicationScoped
 public class EmployeeManager implements EmployeeList, Serializable {
     
     private static final long serialVersionUID = 15L;
@@ -48,6 +50,18 @@ public class EmployeeManager implements EmployeeList, Serializable {
     @Inject
     private CredentialsManager credentialsManager;
     
+    /**
+     * Employees already loaded in the current request
+     */
+    @Inject
+    private IdentityMap identityMap;
+    
+    /**
+     * Employees recently read by any request
+     */
+    @Inject
+    private EmployeeCache employeeCache;
+    
     /**
      * Gets the list of employees.
      * @return The list of Employees as an ArrayList.
@@ -89,12 +103,64 @@ public class EmployeeManager implements EmployeeList, Serializable {
         return employeeList;
     }
 
+    /**
+     * Gets a page of employees ordered by employee number, starting after
+     * the given key (keyset pagination).
+     * @param after employee number of the last employee of the previous
+     *        page, 0 for the first page
+     * @param limit maximum number of employees to return
+     * @return The page of Employees as an ArrayList.
+     */
+    public List<Employee> getEmployeePage(int after, int limit) {
+        ArrayList<Employee> employeeList = new ArrayList<Employee>();
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        try {
+            try {
+                connection = dataSource.getConnection();
+                try {
+                    stmt = connection.prepareStatement("SELECT * FROM Employees"
+                            + " WHERE employeeNumber > ?"
+                            + " ORDER BY employeeNumber LIMIT ?");
+                    stmt.setInt(1, after);
+                    stmt.setInt(2, limit);
+                    ResultSet result = stmt.executeQuery();
+                    while (result.next()) {
+                        employeeList.add(new Employee(
+                                result.getInt("employeeNumber"),
+                                result.getString("employeeName"),
+                                result.getString("userName"),
+                                result.getBoolean("isAdmin")));
+                    }
+                } finally {
+                    if (stmt != null) {
+                        stmt.close();
+                    }
+                }
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        } catch (SQLException ex) {
+            System.out.println("Error in getEmployeePage " + after);
+            ex.printStackTrace();
+            return null;
+        }
+        return employeeList;
+    }
+
     /**
      * Gets the employee with the specified login ID.
      * @return The employee with the specified login ID.
      */
     @Override
     public Employee getEmployeeByUserName(String userName) {
+        Employee employee = employeeCache.getByUserName(userName);
+        if (employee != null) {
+            return employee;
+        }
+        final long stamp = employeeCache.stamp();
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
@@ -106,10 +172,12 @@ public class EmployeeManager implements EmployeeList, Serializable {
                     stmt.setString(1, userName);
                     ResultSet result = stmt.executeQuery();
                     if (result.next()) {
-                        return new Employee(result.getInt("employeeNumber"),
+                        employee = new Employee(result.getInt("employeeNumber"),
                                 result.getString("employeeName"),
                                 result.getString("userName"),
                                 result.getBoolean("isAdmin"));
+                        employeeCache.put(employee, stamp);
+                        return employee;
                     } else {
                         return null;
                     }
@@ -135,6 +203,16 @@ public class EmployeeManager implements EmployeeList, Serializable {
      * @return The employee with the specified employee number.
      */
     public Employee getEmployeeByNumber(int num) {
+        Employee employee = identityMap.getEmployee(num);
+        if (employee != null) {
+            return employee;
+        }
+        employee = employeeCache.getByNumber(num);
+        if (employee != null) {
+            identityMap.putEmployee(employee);
+            return employee;
+        }
+        final long stamp = employeeCache.stamp();
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
@@ -146,10 +224,13 @@ public class EmployeeManager implements EmployeeList, Serializable {
                     stmt.setInt(1, num);
                     ResultSet result = stmt.executeQuery();
                     if (result.next()) {
-                        return new Employee(result.getInt("employeeNumber"),
+                        employee = new Employee(result.getInt("employeeNumber"),
                                 result.getString("employeeName"),
                                 result.getString("userName"),
                                 result.getBoolean("isAdmin"));
+                        employeeCache.put(employee, stamp);
+                        identityMap.putEmployee(employee);
+                        return employee;
                     } else {
                         return null;
                     }
@@ -169,11 +250,63 @@ public class EmployeeManager implements EmployeeList, Serializable {
             return null;
         }
     }
+    /**
+     * Gets the version of the employee directory. It is stored in the
+     * database and incremented in the same transaction as every write to
+     * the Employees table, so all instances of the application agree on
+     * it.
+     * @return opaque directory version
+     * @throws SQLException on database error
+     */
+    public String getDirectoryVersion() throws SQLException {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        try {
+            connection = dataSource.getConnection();
+            try {
+                stmt = connection.prepareStatement("SELECT version "
+                        + "FROM EmployeeDirectory WHERE id = 1");
+                ResultSet result = stmt.executeQuery();
+                result.next();
+                return Long.toString(result.getLong("version"));
+            } finally {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Increments the version of the employee directory on the caller's
+     * connection, so that it commits with the write to Employees.
+     * @param connection connection to write on
+     * @throws SQLException on database error
+     */
+    private static void bumpDirectoryVersion(Connection connection)
+            throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("UPDATE EmployeeDirectory "
+                    + "SET version = version + 1 WHERE id = 1");
+            stmt.executeUpdate();
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+
     /**
      * Adds the employee of interest into database AKA "Persist"
      * @param employee The employee to be added.
      */
     public void addEmployee(Employee employee) {
+        identityMap.evictEmployee(employee.getEmployeeNumber());
         // order of fields in INSERT statement
         final int employeeNumber = 1;
         final int employeeName = 2;
@@ -184,6 +317,7 @@ public class EmployeeManager implements EmployeeList, Serializable {
         try {
             try {
                 connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
                 try {
                     stmt = connection.prepareStatement("INSERT INTO Employees "
                             + "VALUES (?, ?, ?, ?)");
@@ -192,10 +326,16 @@ public class EmployeeManager implements EmployeeList, Serializable {
                     stmt.setString(userName, employee.getUserName());
                     stmt.setBoolean(isAdmin, employee.getIsAdmin());
                     stmt.executeUpdate();
+                    bumpDirectoryVersion(connection);
+                    connection.commit();
+                } catch (final SQLException ex) {
+                    connection.rollback();
+                    throw ex;
                 } finally {
                     if (stmt != null) {
                         stmt.close();
                     }
+                    connection.setAutoCommit(true);
                 }
             } finally {
                 if (connection != null) {
@@ -206,35 +346,61 @@ public class EmployeeManager implements EmployeeList, Serializable {
             System.out.println("Error in addEmployee " + employee);
             ex.printStackTrace();
         }
-        
+        employeeCache.invalidate(employee.getEmployeeNumber());
     }
     
     /**
-     * Updates an existing employee record in the employees table AKA "Merge"
+     * Updates an existing employee record in the employees table AKA "Merge".
+     * If the name and user name are already stored as given nothing is
+     * written, so the versions of the directory and of the employee's
+     * timesheets only move on a real change.
      *
      * @param employee to be edited
      */
     public void editEmployee(Employee employee) {
+        identityMap.evictEmployee(employee.getEmployeeNumber());
         final int employeeName = 1;
         final int userName = 2;
         final int employeeNumber = 3;
+        final int oldName = 4;
+        final int oldUserName = 5;
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
             try {
                 connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
                 try {
                     stmt = connection.prepareStatement("UPDATE Employees "
                             + "SET employeeName = ?, userName = ? "
-                            + "WHERE employeeNumber = ?");
+                            + "WHERE employeeNumber = ? AND NOT "
+                            + "(employeeName <=> ? AND userName <=> ?)");
                     stmt.setString(employeeName, employee.getEmployeeName());
                     stmt.setString(userName, employee.getUserName());
                     stmt.setInt(employeeNumber, employee.getEmployeeNumber());
+                    stmt.setString(oldName, employee.getEmployeeName());
+                    stmt.setString(oldUserName, employee.getUserName());
+                    if (stmt.executeUpdate() == 0) {
+                        connection.rollback();
+                        return;
+                    }
+                    stmt.close();
+                    // timesheets embed the employee, so their versions move too
+                    stmt = connection.prepareStatement("UPDATE Timesheets "
+                            + "SET version = version + 1 "
+                            + "WHERE employeeNumber = ?");
+                    stmt.setInt(1, employee.getEmployeeNumber());
                     stmt.executeUpdate();
+                    bumpDirectoryVersion(connection);
+                    connection.commit();
+                } catch (final SQLException ex) {
+                    connection.rollback();
+                    throw ex;
                 } finally {
                     if (stmt != null) {
                         stmt.close();
                     }
+                    connection.setAutoCommit(true);
                 }
             } finally {
                 if (connection != null) {
@@ -245,6 +411,7 @@ public class EmployeeManager implements EmployeeList, Serializable {
             System.out.println("Error in editEmployee " + employee);
             ex.printStackTrace();
         }
+        employeeCache.invalidate(employee.getEmployeeNumber());
     }
     
     /**
@@ -260,20 +427,29 @@ public class EmployeeManager implements EmployeeList, Serializable {
             return;
         }
         
+        identityMap.evictEmployee(employee.getEmployeeNumber());
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
             try {
                 connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
                 try {
                     stmt = connection.prepareStatement("DELETE FROM Employees "
                             + "WHERE employeeNumber = ?");
                     stmt.setInt(1, employee.getEmployeeNumber());
-                    stmt.executeUpdate();
+                    if (stmt.executeUpdate() > 0) {
+                        bumpDirectoryVersion(connection);
+                    }
+                    connection.commit();
+                } catch (final SQLException ex) {
+                    connection.rollback();
+                    throw ex;
                 } finally {
                     if (stmt != null) {
                         stmt.close();
                     }
+                    connection.setAutoCommit(true);
                 }
             } finally {
                 if (connection != null) {
@@ -284,6 +460,7 @@ public class EmployeeManager implements EmployeeList, Serializable {
             System.out.println("Error in deleteEmployee " + employee);
             ex.printStackTrace();
         }
+        employeeCache.invalidate(employee.getEmployeeNumber());
         credentialsManager.deleteCredentials(employee);
     }
     
@@ -314,11 +491,11 @@ public class EmployeeManager implements EmployeeList, Serializable {
      */
     @Override
     public Employee getAdministrator() {
-        List<Employee> employeeList = getEmployeeList();
-        for (Employee e : employeeList) {
-            if (e.getIsAdmin()) return e;
+        try {
+            return findAdmin();
+        } catch (final SQLException ex) {
+            return null;
         }
-        return null;
     }
     
     /**
@@ -329,11 +506,18 @@ public class EmployeeManager implements EmployeeList, Serializable {
      */
     @Override
     public boolean verifyUser(Credentials credentials) {
-        List<Credentials> credentialsList = credentialsManager.getCredentialsList();
-        for (Credentials c : credentialsList) {
-            if (c.equals(credentials)) return true;
-        };
-        return false;
+        if (credentials.getUserName() == null || credentials.getPassword() == null) {
+            return false;
+        }
+        final Credentials stored = credentialsManager.getCredentialsByUsername(
+                credentials.getUserName());
+        if (stored == null
+                || stored.getEmployeeNumber() != credentials.getEmployeeNumber()) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+                stored.getPassword().getBytes(StandardCharsets.UTF_8),
+                credentials.getPassword().getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -349,16 +533,23 @@ public class EmployeeManager implements EmployeeList, Serializable {
     }
     
     /**
-     * Checks if the admin is logged in.
+     * Checks if the admin is logged in. The role is resolved at login and
+     * kept in the session, so this does not query the database.
      * @return True if the admin is logged in. Otherwise, false.
      */
     public Boolean isAdminLogin() {
-        final Employee currentEmployee = getCurrentEmployee();
-        final Employee admin = getAdministrator();
-        if (admin == null || currentEmployee == null) {
-            return false;
+        final Map<String, Object> session = FacesContext.getCurrentInstance()
+                .getExternalContext().getSessionMap();
+        Boolean isAdmin = (Boolean) session.get("isAdmin");
+        if (isAdmin == null) {
+            final Employee currentEmployee = getCurrentEmployee();
+            if (currentEmployee == null) {
+                return false;
+            }
+            isAdmin = currentEmployee.getIsAdmin();
+            session.put("isAdmin", isAdmin);
         }
-        return currentEmployee.getEmployeeNumber() == admin.getEmployeeNumber();
+        return isAdmin;
     }
     
     /**
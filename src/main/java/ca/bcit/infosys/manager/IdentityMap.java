@@ -0,0 +1,81 @@
+package ca.bcit.infosys.manager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.enterprise.context.RequestScoped;
+
+import ca.bcit.infosys.employee.Employee;
+import ca.bcit.infosys.timesheet.Timesheet;
+
+/**
+ * Request-scoped identity map of loaded timesheets and employees.
+ * Repeated loads of the same entity within one request are answered from
+ * memory; the managers evict entries they write.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@RequestScoped
+public class IdentityMap {
+
+    /** Timesheets loaded in this request, keyed by timesheetId. */
+    private final Map<Integer, Timesheet> timesheets =
+            new HashMap<Integer, Timesheet>();
+
+    /** Employees loaded in this request, keyed by employee number. */
+    private final Map<Integer, Employee> employees =
+            new HashMap<Integer, Employee>();
+
+    /**
+     * Gets a timesheet loaded earlier in this request.
+     * @param timesheetId of the timesheet
+     * @return the timesheet, or null if not loaded yet
+     */
+    public Timesheet getTimesheet(int timesheetId) {
+        return timesheets.get(timesheetId);
+    }
+
+    /**
+     * Remembers a loaded timesheet for the rest of the request.
+     * @param timesheet loaded timesheet
+     */
+    public void putTimesheet(Timesheet timesheet) {
+        timesheets.put(timesheet.getTimesheetId(), timesheet);
+    }
+
+    /**
+     * Forgets a timesheet after it has been written.
+     * @param timesheetId of the timesheet
+     */
+    public void evictTimesheet(int timesheetId) {
+        timesheets.remove(timesheetId);
+    }
+
+    /**
+     * Gets an employee loaded earlier in this request.
+     * @param employeeNumber of the employee
+     * @return the employee, or null if not loaded yet
+     */
+    public Employee getEmployee(int employeeNumber) {
+        return employees.get(employeeNumber);
+    }
+
+    /**
+     * Remembers a loaded employee for the rest of the request.
+     * @param employee loaded employee
+     */
+    public void putEmployee(Employee employee) {
+        employees.put(employee.getEmployeeNumber(), employee);
+    }
+
+    /**
+     * Forgets an employee after it has been written. Cached timesheets may
+     * embed the employee, so they are forgotten as well.
+     * @param employeeNumber of the employee
+     */
+    public void evictEmployee(int employeeNumber) {
+        employees.remove(employeeNumber);
+        timesheets.clear();
+    }
+}
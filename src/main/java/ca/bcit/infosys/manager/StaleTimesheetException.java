@@ -0,0 +1,25 @@
+package ca.bcit.infosys.manager;
+
+/**
+ * Thrown when a timesheet write is conditional on a version that is no
+ * longer the stored version, because someone else wrote the timesheet
+ * since it was read.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+public class StaleTimesheetException extends Exception {
+
+    /** Version number. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     * @param timesheetId of the timesheet
+     * @param expectedVersion version the write was based on
+     */
+    public StaleTimesheetException(int timesheetId, int expectedVersion) {
+        super("Timesheet " + timesheetId + " has changed since version "
+                + expectedVersion);
+    }
+}
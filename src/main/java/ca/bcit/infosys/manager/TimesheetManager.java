@@ -4,11 +4,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.annotation.Resource;
-import javax.enterprise.context.ConversationScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
@@ -19,7 +23,7 @@ import ca.bcit.infosys.timesheet.TimesheetCollection;
 import ca.bcit.infosys.timesheet.TimesheetRow;
 
 @Named("timesheetManager")
-@ConversationScoped
+@ApplicationScoped
 /**
  * Class to manage timesheets.
  * 
@@ -30,6 +34,13 @@ public class TimesheetManager implements TimesheetCollection {
     
     private static final long serialVersionUID = 16L;
     
+    /**
+     * Fetch size for exports. MySQL Connector/J treats Integer.MIN_VALUE as
+     * a request to stream rows one at a time instead of buffering the whole
+     * result set in memory.
+     */
+    private static final int EXPORT_FETCH_SIZE = Integer.MIN_VALUE;
+    
     /**
      * Datasource for timesheet system
      */
@@ -43,52 +54,17 @@ public class TimesheetManager implements TimesheetCollection {
     private TimesheetRowManager tsRowManager;
     
     /**
-     * Provides access to the employees table in the datasource
+     * Timesheets already loaded in the current request
      */
     @Inject
-    private EmployeeManager employeeManager;
+    private IdentityMap identityMap;
 
     /**
      * Returns list of timesheets
      */
     @Override
     public List<Timesheet> getTimesheets() {
-        ArrayList<Timesheet> timesheets = new ArrayList<Timesheet>();
-        Connection connection = null;
-        PreparedStatement stmt = null;
-        try {
-            try {
-                connection = dataSource.getConnection();
-                try {
-                    stmt = connection.prepareStatement("SELECT * FROM "
-                            + "Timesheets ORDER BY timesheetId");
-                    ResultSet result = stmt.executeQuery();
-                    while (result.next()) {
-                        int id = result.getInt("timesheetId");
-                        List<TimesheetRow> rows = tsRowManager
-                                .getTimesheetRows(id);
-                        Employee employee = employeeManager.
-                                getEmployeeByNumber(result.getInt("employeeNumber"));
-                        Timesheet timesheet = new Timesheet(employee,
-                                result.getDate("endDate").toLocalDate(), rows);
-                        timesheet.setTimesheetId(id);
-                        timesheets.add(timesheet);
-                    }
-                } finally {
-                    if (stmt != null) {
-                        stmt.close();
-                    }
-                }
-            } finally {
-                if (connection != null) {
-                    connection.close();
-                }
-            }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-            return null;
-        }
-        return timesheets;
+        return loadTimesheets("Timesheets t", null);
     }
     
     /**
@@ -98,43 +74,135 @@ public class TimesheetManager implements TimesheetCollection {
      */
     @Override
     public List<Timesheet> getTimesheetList(Employee employee) {
-        int empNo = employee.getEmployeeNumber();
+        return loadTimesheets("Timesheets t", "t.employeeNumber = ?",
+                employee.getEmployeeNumber());
+    }
+    
+    /**
+     * Gets a page of timesheets ordered by timesheetId, starting after the
+     * given key (keyset pagination).
+     * @param after timesheetId of the last timesheet of the previous page,
+     *        0 for the first page
+     * @param limit maximum number of timesheets to return
+     * @return The page of timesheets.
+     */
+    public List<Timesheet> getTimesheetPage(int after, int limit) {
+        return loadTimesheets("(SELECT * FROM Timesheets WHERE timesheetId > ? "
+                + "ORDER BY timesheetId LIMIT ?) t", null, after, limit);
+    }
+
+    /**
+     * Streams every timesheet, in timesheetId order, to the given sink.
+     * Rows are read through a forward-only cursor and each timesheet is
+     * handed over as soon as its last row has been read, so memory use
+     * does not depend on the size of the history.
+     * @param sink receives each completed timesheet
+     * @throws SQLException on database error
+     */
+    public void exportTimesheets(Consumer<Timesheet> sink) throws SQLException {
+        readTimesheets("Timesheets t", null, EXPORT_FETCH_SIZE, sink);
+    }
+
+    /**
+     * Loads complete timesheet graphs into a list.
+     * @param source Timesheets table or derived table, aliased as t
+     * @param filter optional WHERE predicate, or null to load every
+     *        timesheet of the source
+     * @param params int values bound in order to the source and filter
+     * @return list of timesheets, or null on database error
+     */
+    private List<Timesheet> loadTimesheets(String source, String filter,
+            int... params) {
         ArrayList<Timesheet> timesheets = new ArrayList<Timesheet>();
+        try {
+            readTimesheets(source, filter, 0, timesheets::add, params);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+        return timesheets;
+    }
+
+    /**
+     * Reads complete timesheet graphs (header, employee and rows) with a
+     * single joined query ordered by timesheetId, assembling each
+     * timesheet as its rows stream past. Timesheets of the same employee
+     * share one Employee instance.
+     * @param source Timesheets table or derived table, aliased as t
+     * @param filter optional WHERE predicate, or null to read every
+     *        timesheet of the source
+     * @param fetchSize JDBC fetch size hint, 0 for the driver default
+     * @param sink receives each completed timesheet
+     * @param params int values bound in order to the source and filter
+     * @throws SQLException on database error
+     */
+    private void readTimesheets(String source, String filter, int fetchSize,
+            Consumer<Timesheet> sink, int... params) throws SQLException {
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
+            connection = dataSource.getConnection();
             try {
-                connection = dataSource.getConnection();
-                try {
-                    stmt = connection.prepareStatement("SELECT * FROM "
-                            + "Timesheets WHERE employeeNumber = ? "
-                            + "ORDER BY timesheetId");
-                    stmt.setInt(1, empNo);
-                    final ResultSet result = stmt.executeQuery();
-                    while (result.next()) {
-                        int id = result.getInt("timesheetId");
-                        List<TimesheetRow> rows = tsRowManager.
-                                getTimesheetRows(id);
-                        Timesheet timesheet = new Timesheet(employee,
-                                result.getDate("endDate").toLocalDate(), rows);
+                stmt = connection.prepareStatement("SELECT t.timesheetId, "
+                        + "t.endDate, t.version, e.employeeNumber, e.employeeName, "
+                        + "e.userName, e.isAdmin, r.projectId, "
+                        + "r.workPackageId, r.sat, r.sun, r.mon, r.tue, "
+                        + "r.wed, r.thu, r.fri, r.notes "
+                        + "FROM " + source + " JOIN Employees e "
+                        + "ON e.employeeNumber = t.employeeNumber "
+                        + "LEFT JOIN TimesheetRows r "
+                        + "ON r.timesheetId = t.timesheetId "
+                        + (filter == null ? "" : "WHERE " + filter + " ")
+                        + "ORDER BY t.timesheetId, r.projectId, "
+                        + "r.workPackageId",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                stmt.setFetchSize(fetchSize);
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setInt(i + 1, params[i]);
+                }
+                ResultSet result = stmt.executeQuery();
+                // one Employee per owner, shared by all of their timesheets
+                final Map<Integer, Employee> employees =
+                        new HashMap<Integer, Employee>();
+                Timesheet timesheet = null;
+                while (result.next()) {
+                    int id = result.getInt("timesheetId");
+                    if (timesheet == null || timesheet.getTimesheetId() != id) {
+                        if (timesheet != null) {
+                            sink.accept(timesheet);
+                        }
+                        int employeeNumber = result.getInt("employeeNumber");
+                        Employee employee = employees.get(employeeNumber);
+                        if (employee == null) {
+                            employee = new Employee(employeeNumber,
+                                    result.getString("employeeName"),
+                                    result.getString("userName"),
+                                    result.getBoolean("isAdmin"));
+                            employees.put(employeeNumber, employee);
+                        }
+                        timesheet = new Timesheet(employee,
+                                result.getDate("endDate").toLocalDate(),
+                                new ArrayList<TimesheetRow>());
                         timesheet.setTimesheetId(id);
-                        timesheets.add(timesheet);
+                        timesheet.setVersion(result.getInt("version"));
                     }
-                } finally {
-                    if (stmt != null) {
-                        stmt.close();
+                    if (result.getString("workPackageId") != null) {
+                        timesheet.getDetails().add(tsRowManager.mapRow(result));
                     }
                 }
+                if (timesheet != null) {
+                    sink.accept(timesheet);
+                }
             } finally {
-                if (connection != null) {
-                    connection.close();
+                if (stmt != null) {
+                    stmt.close();
                 }
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-            return null;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
         }
-        return timesheets;
     }
 
     /**
@@ -162,35 +230,51 @@ public class TimesheetManager implements TimesheetCollection {
     }
     
     /**
-     * Creates a Timesheet object and adds it to the database.
+     * Creates a Timesheet object and adds it to the database. The header and
+     * its rows are inserted in a single transaction; the generated
+     * timesheetId is stored back into the timesheet.
+     * @throws SQLException on database error; nothing is written and the
+     *      timesheetId is left unset
      */
     @Override
-    public void addTimesheet(Timesheet timesheet) {
+    public void addTimesheet(Timesheet timesheet) throws SQLException {
         int employeeNumber = 1;
         int endDate = 2;
-        int tsId = 3;
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
             try {
                 connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
                 try {
                     stmt = connection.prepareStatement("INSERT INTO Timesheets "
-                            + "VALUES (?, ?, ?)");
+                            + "(employeeNumber, endDate) VALUES (?, ?)",
+                            Statement.RETURN_GENERATED_KEYS);
                     stmt.setInt(employeeNumber,
                             timesheet.getEmployee().getEmployeeNumber());
                     stmt.setDate(endDate,
                             java.sql.Date.valueOf(timesheet.getEndDate()));
-                    stmt.setInt(tsId, timesheet.getTimesheetId());
                     stmt.executeUpdate();
-                    List<Timesheet> timesheetList = getTimesheets();
-                    Timesheet ts = timesheetList.get(timesheetList.size()-1);
-                    tsRowManager.addRow(ts.getTimesheetId(),
-                            timesheet.getDetails());
+                    ResultSet keys = stmt.getGeneratedKeys();
+                    if (!keys.next()) {
+                        throw new SQLException("No timesheetId generated");
+                    }
+                    int id = keys.getInt(1);
+                    if (timesheet.getDetails() != null
+                            && !timesheet.getDetails().isEmpty()) {
+                        tsRowManager.insertRows(connection, id,
+                                timesheet.getDetails());
+                    }
+                    connection.commit();
+                    timesheet.setTimesheetId(id);
+                } catch (final SQLException ex) {
+                    connection.rollback();
+                    throw ex;
                 } finally {
                     if (stmt != null) {
                         stmt.close();
                     }
+                    connection.setAutoCommit(true);
                 }
             } finally {
                 if (connection != null) {
@@ -199,6 +283,7 @@ public class TimesheetManager implements TimesheetCollection {
             }
         } catch (final SQLException ex) {
             ex.printStackTrace();
+            throw ex;
         }
     }
     
@@ -226,52 +311,203 @@ public class TimesheetManager implements TimesheetCollection {
      * @return timesheet
      */
     public Timesheet find(Integer timesheetId) {
-        Timesheet timesheet = null;
+        Timesheet timesheet = identityMap.getTimesheet(timesheetId);
+        if (timesheet != null) {
+            return timesheet;
+        }
+        List<Timesheet> timesheets = loadTimesheets("Timesheets t",
+                "t.timesheetId = ?", timesheetId);
+        if (timesheets == null || timesheets.isEmpty()) {
+            return null;
+        }
+        timesheet = timesheets.get(0);
+        identityMap.putTimesheet(timesheet);
+        return timesheet;
+    }
+    
+    
+    /**
+     * Gets the employee number of a timesheet's owner with a primary key
+     * lookup, without loading the timesheet's rows or employee.
+     * @param timesheetId of the timesheet
+     * @return owner's employee number, or null if there is no such timesheet
+     * @throws SQLException on database error
+     */
+    public Integer getOwnerNumber(int timesheetId) throws SQLException {
+        Timesheet loaded = identityMap.getTimesheet(timesheetId);
+        if (loaded != null) {
+            return loaded.getEmployee().getEmployeeNumber();
+        }
         Connection connection = null;
         PreparedStatement stmt = null;
         try {
+            connection = dataSource.getConnection();
             try {
-                connection = dataSource.getConnection();
-                try {
-                    stmt = connection.prepareStatement("SELECT * FROM Timesheets WHERE TimesheetID = ?");
-                    stmt.setInt(1, timesheetId);
-                    final ResultSet result = stmt.executeQuery();
-                    if (result.next()) {
-                        int id = result.getInt("TimesheetID");
-                        List<TimesheetRow> rows = tsRowManager.getTimesheetRows(id);
-                        Employee employee = employeeManager.
-                                getEmployeeByNumber(result.getInt("EmployeeNumber"));
-                        timesheet = new Timesheet(employee,
-                                result.getDate("EndDate").toLocalDate(), rows);
-                        timesheet.setTimesheetId(id);
-                    }
-                } finally {
-                    if (stmt != null) {
-                        stmt.close();
-                    }
+                stmt = connection.prepareStatement("SELECT employeeNumber "
+                        + "FROM Timesheets WHERE timesheetId = ?");
+                stmt.setInt(1, timesheetId);
+                ResultSet result = stmt.executeQuery();
+                if (result.next()) {
+                    return result.getInt("employeeNumber");
                 }
+                return null;
             } finally {
-                if (connection != null) {
-                    connection.close();
+                if (stmt != null) {
+                    stmt.close();
                 }
             }
-        } catch (final SQLException ex) {
-            ex.printStackTrace();
-            return null;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
         }
-        return timesheet;
     }
     
+    /**
+     * Gets the stored version of a timesheet with a primary key lookup.
+     * @param timesheetId of the timesheet
+     * @return version, or null if there is no such timesheet
+     * @throws SQLException on database error
+     */
+    public Integer getVersion(int timesheetId) throws SQLException {
+        Timesheet loaded = identityMap.getTimesheet(timesheetId);
+        if (loaded != null) {
+            return loaded.getVersion();
+        }
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        try {
+            connection = dataSource.getConnection();
+            try {
+                stmt = connection.prepareStatement("SELECT version "
+                        + "FROM Timesheets WHERE timesheetId = ?");
+                stmt.setInt(1, timesheetId);
+                ResultSet result = stmt.executeQuery();
+                if (result.next()) {
+                    return result.getInt("version");
+                }
+                return null;
+            } finally {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Increments the version of a timesheet on the caller's connection.
+     * Every write to a timesheet or its rows goes through here, so that a
+     * version read earlier identifies the state it was read in.
+     * @param connection connection to write on
+     * @param timesheetId of the timesheet
+     * @throws SQLException on database error
+     */
+    static void bumpVersion(Connection connection, int timesheetId)
+            throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("UPDATE Timesheets "
+                    + "SET version = version + 1 WHERE timesheetId = ?");
+            stmt.setInt(1, timesheetId);
+            stmt.executeUpdate();
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+
+    /**
+     * Locks the version of a timesheet on the caller's connection until it
+     * commits, and checks that it is still the version the caller read.
+     * Writers that may turn out to change nothing take this lock first and
+     * bump the version only if they did write.
+     * @param connection connection to read on, not in auto-commit mode
+     * @param timesheetId of the timesheet
+     * @param expectedVersion version the write is based on, or null to write
+     *      unconditionally
+     * @throws SQLException on database error
+     * @throws StaleTimesheetException if the stored version is not
+     *      expectedVersion
+     */
+    static void lockVersion(Connection connection, int timesheetId,
+            Integer expectedVersion)
+            throws SQLException, StaleTimesheetException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("SELECT version "
+                    + "FROM Timesheets WHERE timesheetId = ? FOR UPDATE");
+            stmt.setInt(1, timesheetId);
+            ResultSet result = stmt.executeQuery();
+            final boolean found = result.next();
+            if (expectedVersion != null
+                    && (!found || result.getInt("version") != expectedVersion)) {
+                throw new StaleTimesheetException(timesheetId, expectedVersion);
+            }
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
     
     /**
-     * Updating an existing timesheet
+     * Reads the version of a timesheet on the caller's connection, so that
+     * a transaction sees the version it has just written.
+     * @param connection connection to read on
+     * @param timesheetId of the timesheet
+     * @return version, or null if the timesheet does not exist
+     * @throws SQLException on database error
+     */
+    static Integer readVersion(Connection connection, int timesheetId)
+            throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("SELECT version "
+                    + "FROM Timesheets WHERE timesheetId = ?");
+            stmt.setInt(1, timesheetId);
+            ResultSet result = stmt.executeQuery();
+            if (result.next()) {
+                return result.getInt("version");
+            }
+            return null;
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+
+    /**
+     * Updating an existing timesheet if it is still at the version the
+     * caller read. The check and the write are a single statement, so no
+     * lock is held between reading and writing. If the employee and end
+     * date are already stored as given nothing is written and the version
+     * does not move.
      * @param timesheet to be updated
      * @param id of timesheet
+     * @param expectedVersion version the update is based on, or null to
+     *      update unconditionally
+     * @throws StaleTimesheetException if the timesheet changed since
+     *      expectedVersion
+     * @throws SQLException on database error; the update may not have been
+     *      applied
      */
-    public void updateTimesheet(Timesheet timesheet, int id) {
+    public void updateTimesheet(Timesheet timesheet, int id,
+            Integer expectedVersion)
+            throws StaleTimesheetException, SQLException {
+        identityMap.evictTimesheet(id);
         int employeeNumber = 1;
         int endDate = 2;
         int timesheetId = 3;
+        int oldEmployeeNumber = 4;
+        int oldEndDate = 5;
+        int version = 6;
 
         Connection connection = null;
         PreparedStatement stmt = null;
@@ -279,16 +515,28 @@ public class TimesheetManager implements TimesheetCollection {
             try {
                 connection = dataSource.getConnection();
                 try {
-                    stmt = connection.prepareStatement("UPDATE Timesheets " +
-                            "SET EmployeeNumber = ?, EndDate = ? WHERE TimesheetId = ?");
-                    stmt.setInt(employeeNumber,
-                            timesheet.getEmployee().getEmployeeNumber());
-                    stmt.setDate(endDate, java.sql.Date.valueOf(timesheet.getEndDate()));
+                    stmt = connection.prepareStatement("UPDATE Timesheets "
+                            + "SET EmployeeNumber = ?, EndDate = ?, "
+                            + "version = version + 1 WHERE TimesheetId = ? "
+                            + "AND NOT (EmployeeNumber <=> ? AND EndDate <=> ?)"
+                            + (expectedVersion == null ? "" : " AND version = ?"));
+                    final int owner = timesheet.getEmployee().getEmployeeNumber();
+                    final java.sql.Date end =
+                            java.sql.Date.valueOf(timesheet.getEndDate());
+                    stmt.setInt(employeeNumber, owner);
+                    stmt.setDate(endDate, end);
                     stmt.setInt(timesheetId, id);
-                    stmt.executeUpdate();
-                } catch (final Exception e) {
-                    connection.rollback();
-                    e.printStackTrace();
+                    stmt.setInt(oldEmployeeNumber, owner);
+                    stmt.setDate(oldEndDate, end);
+                    if (expectedVersion != null) {
+                        stmt.setInt(version, expectedVersion);
+                    }
+                    if (stmt.executeUpdate() == 0 && expectedVersion != null
+                            && !expectedVersion.equals(
+                                    readVersion(connection, id))) {
+                        // nothing written because it is stale, not unchanged
+                        throw new StaleTimesheetException(id, expectedVersion);
+                    }
                 } finally {
                     if (stmt != null) {
                         stmt.close();
@@ -301,6 +549,7 @@ public class TimesheetManager implements TimesheetCollection {
             }
         } catch (final SQLException ex) {
             ex.printStackTrace();
+            throw ex;
         }
     }
 }
@@ -1,18 +1,23 @@
 package ca.bcit.infosys.manager;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Resource;
-import javax.enterprise.context.ConversationScoped;
+import javax.enterprise.context.ApplicationScoped;
 import javax.faces.application.FacesMessage;
 import javax.faces.context.FacesContext;
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
 
@@ -26,7 +31,7 @@ import ca.bcit.infosys.timesheet.TimesheetRow;
  */
 
 @Named("timesheetRowManager")
-@ConversationScoped
+@ApplicationScoped
 public class TimesheetRowManager implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -37,6 +42,34 @@ public class TimesheetRowManager implements Serializable {
     @Resource(mappedName = "java:jboss/datasources/timesheet_system_asn3")
     private DataSource dataSource;
     
+    /**
+     * Timesheets already loaded in the current request
+     */
+    @Inject
+    private IdentityMap identityMap;
+    
+    /**
+     * Decihour columns of TimesheetRows, indexed TimesheetRow.SAT .. FRI
+     */
+    private static final String[] DAY_COLUMNS = {"sat", "sun", "mon", "tue", "wed",
+        "thu", "fri"};
+    
+    /**
+     * Inserts one row
+     */
+    static final String INSERT_ROW = "INSERT INTO TimesheetRows "
+            + "(timesheetId, projectId, workPackageId, sat, sun, mon, tue, wed, "
+            + "thu, fri, notes) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    /**
+     * Inserts one row, or overwrites the hours and notes of the row with the
+     * same primary key
+     */
+    static final String UPSERT_ROW = INSERT_ROW
+            + " ON DUPLICATE KEY UPDATE sat = VALUES(sat), sun = VALUES(sun), "
+            + "mon = VALUES(mon), tue = VALUES(tue), wed = VALUES(wed), "
+            + "thu = VALUES(thu), fri = VALUES(fri), notes = VALUES(notes)";
+    
     /**
      * Gets list of timesheet rows by timesheetId
      *
@@ -57,14 +90,7 @@ public class TimesheetRowManager implements Serializable {
                     stmt.setInt(1, timesheetId);
                     ResultSet result = stmt.executeQuery();
                     while (result.next()) {
-                        String hours = result.getString("totalWeekHours");
-                        BigDecimal[] hoursBD = convertStringToBD(hours);
-                        TimesheetRow newRow = new TimesheetRow(
-                                result.getInt("projectId"),
-                                result.getString("workPackageId"));
-                        newRow.setNotes(result.getString("notes"));
-                        newRow.setTotalWeekHours(hoursBD);
-                        timesheetRows.add(newRow);
+                        timesheetRows.add(mapRow(result));
                     }
                 } finally {
                     if (stmt != null) {
@@ -83,59 +109,224 @@ public class TimesheetRowManager implements Serializable {
         return timesheetRows;
     }
 
-    
-    public BigDecimal[] convertStringToBD(String hours) {
-        final String[] hoursString = hours.split(",");
-        final BigDecimal[] hoursBD = new BigDecimal[hoursString.length];
+    /**
+     * Counts the rows of a timesheet without loading them.
+     *
+     * @param timesheetId of timesheet
+     * @return number of rows
+     * @throws SQLException on database error
+     */
+    public int countRows(int timesheetId) throws SQLException {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        try {
+            connection = dataSource.getConnection();
+            try {
+                stmt = connection.prepareStatement("SELECT COUNT(*) FROM "
+                        + "TimesheetRows WHERE timesheetId = ?");
+                stmt.setInt(1, timesheetId);
+                ResultSet result = stmt.executeQuery();
+                result.next();
+                return result.getInt(1);
+            } finally {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
 
-        for (int i = 0; i < hoursBD.length; i++) {
-            hoursBD[i] = new BigDecimal(hoursString[i]);
+    /**
+     * Sets the hours charged on one day of one timesheet row, leaving the
+     * other days and rows untouched.
+     *
+     * @param timesheetId of timesheet
+     * @param projectId of the row
+     * @param workPackageId of the row
+     * @param day day number, TimesheetRow.SAT .. TimesheetRow.FRI
+     * @param decihours hours * 10, 0 .. 240
+     * @param expectedVersion version of the timesheet the edit is based on,
+     *      or null to edit unconditionally
+     * @return version of the timesheet after the edit, unchanged if the day
+     *      already had those hours, or null if the timesheet has no such row
+     * @throws IllegalArgumentException if day or decihours is out of range
+     * @throws StaleTimesheetException if the timesheet changed since
+     *      expectedVersion; nothing is written
+     * @throws SQLException on database error
+     */
+    public Integer setDayHours(int timesheetId, int projectId,
+            String workPackageId, int day, int decihours,
+            Integer expectedVersion)
+            throws SQLException, StaleTimesheetException {
+        // same range checks as a row edited in memory
+        new TimesheetRow().setDecihour(day, decihours);
+        identityMap.evictTimesheet(timesheetId);
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                TimesheetManager.lockVersion(connection, timesheetId,
+                        expectedVersion);
+                if (updateDay(connection, timesheetId, projectId,
+                        workPackageId, day, decihours)) {
+                    TimesheetManager.bumpVersion(connection, timesheetId);
+                } else if (!exists(connection, timesheetId, projectId,
+                        workPackageId)) {
+                    connection.rollback();
+                    return null;
+                }
+                final Integer version = TimesheetManager.readVersion(
+                        connection, timesheetId);
+                connection.commit();
+                return version;
+            } catch (final SQLException | StaleTimesheetException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Writes one day column of one row on the caller's connection, unless
+     * it already holds the value.
+     *
+     * @param connection connection to write on
+     * @param timesheetId of timesheet
+     * @param projectId of the row
+     * @param workPackageId of the row
+     * @param day day number, TimesheetRow.SAT .. TimesheetRow.FRI
+     * @param decihours hours * 10
+     * @return true if the row exists and its day changed
+     * @throws SQLException on database error
+     */
+    private static boolean updateDay(Connection connection, int timesheetId,
+            int projectId, String workPackageId, int day, int decihours)
+            throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("UPDATE TimesheetRows SET "
+                    + DAY_COLUMNS[day] + " = ? WHERE timesheetId = ? "
+                    + "AND projectId = ? AND workPackageId = ? "
+                    + "AND " + DAY_COLUMNS[day] + " <> ?");
+            stmt.setInt(1, decihours);
+            stmt.setInt(2, timesheetId);
+            stmt.setInt(3, projectId);
+            stmt.setString(4, workPackageId);
+            // matched rows are changed rows, whether the driver reports
+            // found or affected rows
+            stmt.setInt(5, decihours);
+            return stmt.executeUpdate() > 0;
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a timesheet has a row with the given key.
+     *
+     * @param connection connection to read on
+     * @param timesheetId of timesheet
+     * @param projectId of the row
+     * @param workPackageId of the row
+     * @return true if the row exists
+     * @throws SQLException on database error
+     */
+    private static boolean exists(Connection connection, int timesheetId,
+            int projectId, String workPackageId) throws SQLException {
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("SELECT 1 FROM TimesheetRows "
+                    + "WHERE timesheetId = ? AND projectId = ? "
+                    + "AND workPackageId = ?");
+            stmt.setInt(1, timesheetId);
+            stmt.setInt(2, projectId);
+            stmt.setString(3, workPackageId);
+            return stmt.executeQuery().next();
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+
+    /**
+     * Builds a TimesheetRow from the current row of a result set containing
+     * the TimesheetRows columns.
+     * @param result positioned on a TimesheetRows row
+     * @return the mapped TimesheetRow
+     * @throws SQLException on column access failure
+     */
+    TimesheetRow mapRow(ResultSet result) throws SQLException {
+        TimesheetRow row = new TimesheetRow(result.getInt("projectId"),
+                result.getString("workPackageId"));
+        row.setNotes(result.getString("notes"));
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            row.setDecihour(d, result.getInt(DAY_COLUMNS[d]));
+        }
+        return row;
+    }
+    
+    /**
+     * Binds the seven decihour values of a row to consecutive parameters.
+     * @param stmt statement to bind
+     * @param first index of the Saturday parameter
+     * @param row row whose hours are bound
+     * @throws SQLException on binding failure
+     */
+    private static void setHours(PreparedStatement stmt, int first,
+            TimesheetRow row) throws SQLException {
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            stmt.setInt(first + d, row.getDecihour(d));
         }
-        return hoursBD;
     }
+    
     /**
      * Adds TimesheetRow object to a timesheet object in the database
      *
      * @param timesheetId specifies timesheet to add rows to
      * @param timesheetRows specifies rows to be added
+     * @return false if rejected for a duplicate (projectId, workPackageId)
+     * @throws SQLException on database error; nothing is written
      */
-    public void addRow(Integer timesheetId, List<TimesheetRow> timesheetRows) {
-        if (!checkPK(timesheetRows)) {
+    public boolean addRow(Integer timesheetId, List<TimesheetRow> timesheetRows)
+            throws SQLException {
+        if (!checkPK(timesheetId, timesheetRows)) {
             final FacesContext context = FacesContext.getCurrentInstance();
-            context.addMessage(null,
-                    new FacesMessage("Error: a timesheet row with same"
-                            + " ProjectID and WorkPackageID exists."));
-            return;
+            if (context != null) {
+                context.addMessage(null,
+                        new FacesMessage("Error: a timesheet row with same"
+                                + " ProjectID and WorkPackageID exists."));
+            }
+            return false;
         }
-        final int tsId = 1;
-        final int pId = 2;
-        final int wpId = 3;
-        final int hours = 4;
-        final int notes = 5;
-
+        identityMap.evictTimesheet(timesheetId);
         Connection connection = null;
-        PreparedStatement stmt = null;
         try {
             try {
                 connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
                 try {
-                    stmt = connection.prepareStatement("INSERT INTO "
-                            + "TimesheetRows VALUES(?, ?, ?, ?, ?)");
-                    for (TimesheetRow timesheetRow : timesheetRows) {
-                        stmt.setInt(tsId, timesheetId);
-                        stmt.setInt(pId, timesheetRow.getProjectId());
-                        stmt.setString(wpId, timesheetRow.getWorkPackageId());
-                        stmt.setString(hours, convertBDToString(timesheetRow.
-                                getTotalWeekHours()));
-                        stmt.setString(notes, timesheetRow.getNotes());
-                        stmt.addBatch();
-                        stmt.clearParameters();
-                    }
-                    stmt.executeBatch();
+                    TimesheetManager.bumpVersion(connection, timesheetId);
+                    insertRows(connection, timesheetId, timesheetRows);
+                    connection.commit();
+                } catch (final SQLException ex) {
+                    connection.rollback();
+                    throw ex;
                 } finally {
-                    if (stmt != null) {
-                        stmt.close();
-                    }
+                    connection.setAutoCommit(true);
                 }
             } finally {
                 if (connection != null) {
@@ -144,53 +335,106 @@ public class TimesheetRowManager implements Serializable {
             }
         } catch (final SQLException ex) {
             ex.printStackTrace();
+            throw ex;
         }
+        return true;
     }
     
     /**
-     * Edits TimesheetRow object in database (update)
+     * Inserts a batch of rows for a timesheet on the caller's connection, so
+     * that it can take part in the caller's transaction.
      *
+     * @param connection connection to insert on
      * @param timesheetId specifies timesheet to add rows to
      * @param timesheetRows specifies rows to be added
+     * @throws SQLException on insert failure
      */
-    public void editRow(Integer timesheetId, List<TimesheetRow> timesheetRows) {
-        if (!checkPK(timesheetRows)) {
-            final FacesContext context = FacesContext.getCurrentInstance();
-            context.addMessage(null,
-                    new FacesMessage("Error: a timesheet row with same"
-                            + " ProjectID and WorkPackageID exists."));
-            return;
-        }
-        final int pId = 1;
-        final int wpId = 2;
-        final int hours = 3;
-        final int notes = 4;
-        final int tsId = 5;
+    void insertRows(Connection connection, int timesheetId,
+            List<TimesheetRow> timesheetRows) throws SQLException {
+        writeRows(connection, INSERT_ROW, timesheetId, timesheetRows);
+    }
+    
+    /**
+     * Writes a batch of rows with an INSERT_ROW shaped statement.
+     *
+     * @param connection connection to write on
+     * @param sql INSERT_ROW or UPSERT_ROW
+     * @param timesheetId timesheet the rows belong to
+     * @param timesheetRows rows to write
+     * @throws SQLException on write failure
+     */
+    static void writeRows(Connection connection, String sql,
+            int timesheetId, List<TimesheetRow> timesheetRows)
+            throws SQLException {
+        final int tsId = 1;
+        final int pId = 2;
+        final int wpId = 3;
+        final int hours = 4;
+        final int notes = 11;
 
-        Connection connection = null;
         PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement(sql);
+            for (TimesheetRow timesheetRow : timesheetRows) {
+                stmt.setInt(tsId, timesheetId);
+                stmt.setInt(pId, timesheetRow.getProjectId());
+                stmt.setString(wpId, timesheetRow.getWorkPackageId());
+                setHours(stmt, hours, timesheetRow);
+                stmt.setString(notes, timesheetRow.getNotes());
+                stmt.addBatch();
+                stmt.clearParameters();
+            }
+            stmt.executeBatch();
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+    }
+    
+    /**
+     * Edits TimesheetRow object in database (update). The submitted rows
+     * replace the stored rows; only rows that changed are written, and the
+     * timesheet's version only moves if one was.
+     *
+     * @param timesheetId specifies timesheet to edit rows of
+     * @param timesheetRows specifies the full set of rows
+     * @param expectedVersion version of the timesheet the edit is based on,
+     *      or null to edit unconditionally
+     * @return false if rejected for a duplicate (projectId, workPackageId)
+     * @throws StaleTimesheetException if the timesheet changed since
+     *      expectedVersion; nothing is written
+     * @throws SQLException on database error; nothing is written
+     */
+    public boolean editRow(Integer timesheetId, List<TimesheetRow> timesheetRows,
+            Integer expectedVersion) throws StaleTimesheetException, SQLException {
+        if (rowKeys(timesheetRows) == null) {
+            final FacesContext context = FacesContext.getCurrentInstance();
+            if (context != null) {
+                context.addMessage(null,
+                        new FacesMessage("Error: a timesheet row with same"
+                                + " ProjectID and WorkPackageID exists."));
+            }
+            return false;
+        }
+        identityMap.evictTimesheet(timesheetId);
+        Connection connection = null;
         try {
             try {
                 connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
                 try {
-                    stmt = connection.prepareStatement("UPDATE TimesheetRows "
-                            + "SET projectId=?, workPackageId=?, totalWeekHours"
-                            + " =?, notes =? WHERE timesheetId = ?");
-                    for (final TimesheetRow timesheetRow : timesheetRows) {
-                        stmt.setInt(pId, timesheetRow.getProjectId());
-                        stmt.setString(wpId, timesheetRow.getWorkPackageId());
-                        stmt.setString(hours, convertBDToString(
-                                timesheetRow.getTotalWeekHours()));
-                        stmt.setString(notes, timesheetRow.getNotes());
-                        stmt.setInt(tsId, timesheetId);
-                        stmt.addBatch();
-                        stmt.clearParameters();
+                    TimesheetManager.lockVersion(connection, timesheetId,
+                            expectedVersion);
+                    if (syncRows(connection, timesheetId, timesheetRows)) {
+                        TimesheetManager.bumpVersion(connection, timesheetId);
                     }
-                    stmt.executeBatch();
+                    connection.commit();
+                } catch (final SQLException | StaleTimesheetException ex) {
+                    connection.rollback();
+                    throw ex;
                 } finally {
-                    if (stmt != null) {
-                        stmt.close();
-                    }
+                    connection.setAutoCommit(true);
                 }
             } finally {
                 if (connection != null) {
@@ -199,24 +443,104 @@ public class TimesheetRowManager implements Serializable {
             }
         } catch (final SQLException ex) {
             ex.printStackTrace();
+            throw ex;
+        }
+        return true;
+    }
+    
+    /**
+     * Makes the stored rows of a timesheet match the submitted rows. Rows are
+     * matched on (projectId, workPackageId); new or changed rows are written
+     * with one batched upsert and rows no longer submitted are removed with
+     * one batched delete. Unchanged rows are not written.
+     *
+     * @param connection connection to write on
+     * @param timesheetId timesheet whose rows are replaced
+     * @param timesheetRows complete set of rows for the timesheet
+     * @return true if any row was written or removed
+     * @throws SQLException on database error
+     */
+    private boolean syncRows(Connection connection, int timesheetId,
+            List<TimesheetRow> timesheetRows) throws SQLException {
+        final Map<String, TimesheetRow> stored = new HashMap<String, TimesheetRow>();
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement("SELECT * FROM TimesheetRows "
+                    + "WHERE timesheetId = ?");
+            stmt.setInt(1, timesheetId);
+            ResultSet result = stmt.executeQuery();
+            while (result.next()) {
+                TimesheetRow row = mapRow(result);
+                stored.put(rowKey(row.getProjectId(), row.getWorkPackageId()), row);
+            }
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+        }
+
+        final List<TimesheetRow> changed = new ArrayList<TimesheetRow>();
+        for (TimesheetRow timesheetRow : timesheetRows) {
+            TimesheetRow old = stored.remove(rowKey(timesheetRow.getProjectId(),
+                    timesheetRow.getWorkPackageId()));
+            if (old == null || !sameContent(old, timesheetRow)) {
+                changed.add(timesheetRow);
+            }
+        }
+        if (!changed.isEmpty()) {
+            writeRows(connection, UPSERT_ROW, timesheetId, changed);
+        }
+        if (!stored.isEmpty()) {
+            stmt = null;
+            try {
+                stmt = connection.prepareStatement("DELETE FROM TimesheetRows "
+                        + "WHERE timesheetId = ? AND projectId = ? "
+                        + "AND workPackageId = ?");
+                for (TimesheetRow removed : stored.values()) {
+                    stmt.setInt(1, timesheetId);
+                    stmt.setInt(2, removed.getProjectId());
+                    stmt.setString(3, removed.getWorkPackageId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            } finally {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            }
         }
+        return !changed.isEmpty() || !stored.isEmpty();
     }
     
     /**
-     * Converts BigDecimal array format to String
-     * @param hours array of BigDecimal objects
-     * @return String representing BigDecimal array elements
+     * Checks whether two rows with the same key carry the same hours and
+     * notes.
+     * @param stored row read from the database
+     * @param submitted row submitted by the client
+     * @return true if writing submitted would not change the stored row
      */
-    public String convertBDToString(BigDecimal[] hours) {
-        String s = "";
-        for (int i = 0; i < hours.length; i++) {
-            s += hours[i].toString();
-            if (i != hours.length-1) s+= ",";
+    private static boolean sameContent(TimesheetRow stored, TimesheetRow submitted) {
+        if (stored.getPackedHours() != submitted.getPackedHours()) {
+            return false;
         }
-        return s;
+        return stored.getNotes() == null ? submitted.getNotes() == null
+                : stored.getNotes().equals(submitted.getNotes());
     }
     
-    public boolean checkPK(List<TimesheetRow> timesheetRows) {
+    /**
+     * Checks that rows to be added to a timesheet have unique primary keys,
+     * both within the batch and against the rows already stored for that
+     * timesheet. Only the timesheet's own PKTimesheetRows range is read.
+     *
+     * @param timesheetId timesheet the rows are added to
+     * @param timesheetRows rows to be added
+     * @return true if no (projectId, workPackageId) pair is duplicated
+     */
+    public boolean checkPK(Integer timesheetId, List<TimesheetRow> timesheetRows) {
+        final Set<String> keys = rowKeys(timesheetRows);
+        if (keys == null) {
+            return false;
+        }
         Connection connection = null;
         PreparedStatement stmt = null;
         boolean res = true;
@@ -224,18 +548,14 @@ public class TimesheetRowManager implements Serializable {
             try {
                 connection = dataSource.getConnection();
                 try {
-                    stmt = connection.prepareStatement("SELECT * FROM "
-                            + "TimesheetRows");
+                    stmt = connection.prepareStatement("SELECT projectId, "
+                            + "workPackageId FROM TimesheetRows "
+                            + "WHERE timesheetId = ?");
+                    stmt.setInt(1, timesheetId);
                     ResultSet result = stmt.executeQuery();
-                    while (result.next()) {
-                        for (TimesheetRow timesheetRow : timesheetRows) {
-                            if (timesheetRow.getProjectId() ==
-                                    result.getInt("projectId") &&
-                                    timesheetRow.getWorkPackageId() ==
-                                    result.getString("workPackageId")) {
-                                res = false;
-                            }
-                        }
+                    while (res && result.next()) {
+                        res = !keys.contains(rowKey(result.getInt("projectId"),
+                                result.getString("workPackageId")));
                     }
                 } finally {
                     if (stmt != null) {
@@ -252,4 +572,33 @@ public class TimesheetRowManager implements Serializable {
         }
         return res;
     }
+    
+    /**
+     * Collects the primary keys of a batch of rows.
+     * @param timesheetRows rows to collect keys from
+     * @return set of row keys, or null if the batch repeats a key
+     */
+    private static Set<String> rowKeys(List<TimesheetRow> timesheetRows) {
+        final Set<String> keys = new HashSet<String>();
+        for (TimesheetRow timesheetRow : timesheetRows) {
+            if (!keys.add(rowKey(timesheetRow.getProjectId(),
+                    timesheetRow.getWorkPackageId()))) {
+                return null;
+            }
+        }
+        return keys;
+    }
+    
+    /**
+     * Builds the lookup key of a row's (projectId, workPackageId) pair.
+     * The workPackageId is lower cased because the column's collation is
+     * case-insensitive: "wp1" and "WP1" are the same primary key.
+     * @param projectId of the row
+     * @param workPackageId of the row
+     * @return key identifying the row within its timesheet
+     */
+    private static String rowKey(int projectId, String workPackageId) {
+        return projectId + "/" + (workPackageId == null ? null
+                : workPackageId.toLowerCase(Locale.ROOT));
+    }
 }
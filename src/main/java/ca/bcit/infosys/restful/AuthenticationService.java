@@ -1,6 +1,5 @@
 package ca.bcit.infosys.restful;
 
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 
 import javax.enterprise.event.Event;
@@ -17,8 +16,11 @@ import javax.ws.rs.core.Response.Status;
 import org.apache.commons.codec.binary.Hex;
 
 import ca.bcit.infosys.manager.CredentialsManager;
+import ca.bcit.infosys.manager.EmployeeManager;
 import ca.bcit.infosys.authentication.TokenBuilder;
+import ca.bcit.infosys.authentication.TokenKeyStore;
 import ca.bcit.infosys.employee.Credentials;
+import ca.bcit.infosys.employee.Employee;
 import ca.bcit.infosys.authentication.AuthenticatedEmployee;
 
 @Path("/authentication")
@@ -27,6 +29,12 @@ public class AuthenticationService {
     @Inject
     private CredentialsManager credManager;
 
+    @Inject
+    private EmployeeManager employeeManager;
+
+    @Inject
+    private TokenKeyStore tokenKeys;
+
     @Inject
     @AuthenticatedEmployee
     Event<String> authEvent;
@@ -37,12 +45,7 @@ public class AuthenticationService {
      * Constructor initializes TokenBuilder member
      */
     public AuthenticationService() {
-        try {
-            tokenBuilder = new TokenBuilder();
-        } catch (NoSuchAlgorithmException e) {
-            tokenBuilder = null;
-            e.printStackTrace();
-        }
+        tokenBuilder = new TokenBuilder();
     }
 
     /**
@@ -57,8 +60,18 @@ public class AuthenticationService {
         try {
             authenticate(c.getUserName(), c.getPassword());
             authEvent.fire(c.getUserName());
-            final String token = Hex.encodeHexString(tokenBuilder.encrypt(
-                    c.getUserName() + c.getPassword()));
+            final String token;
+            if (tokenKeys.isEnabled()) {
+                final Employee employee =
+                        employeeManager.getEmployeeByUserName(c.getUserName());
+                final String keyId = tokenKeys.getActiveKeyId();
+                token = tokenBuilder.sign(keyId, tokenKeys.getKey(keyId),
+                        employee, System.currentTimeMillis() / 1000
+                        + tokenKeys.getTtlSeconds());
+            } else {
+                token = Hex.encodeHexString(tokenBuilder.encrypt(
+                        c.getUserName() + c.getPassword()));
+            }
             return Response.ok(token).build();
         } catch (final Exception e) {
             return Response.status(Status.UNAUTHORIZED).
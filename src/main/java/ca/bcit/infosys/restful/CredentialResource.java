@@ -11,6 +11,8 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Response;
 
 import ca.bcit.infosys.authentication.Secured;
@@ -31,68 +33,87 @@ public class CredentialResource {
     @AuthenticatedEmployee
     private Employee authEmployee;
 
+    @Inject
+    private DaoExecutor daoExecutor;
+
     /**
      * Gets the credentials of an employee with a specified username.
+     * @param async suspended response, resumed with the credentials of the
+     *      employee with the username
      * @param username of the employee.
-     * @return The credentials of the employee with the username
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @Path("/{username}")
     @GET
     @Produces("application/json")
-    public Credentials find(@PathParam("username") String username) {
+    public void find(@Suspended AsyncResponse async,
+            @PathParam("username") String username) {
         Response res = checkCred(authEmployee, username);
         if (res != null) throw new WebApplicationException(res.getStatus());
-        Credentials cred = credentialsManager.getCredentialsByUsername(username);
-        if (cred == null) {
-            throw new WebApplicationException(
-                    "Cannot find credentials with username provided",
-                    Response.Status.NOT_FOUND);
-        }
-        return cred;
+        daoExecutor.submit(async, "credentials.get", () -> {
+            Credentials cred = credentialsManager.getCredentialsByUsername(username);
+            if (cred == null) {
+                throw new WebApplicationException(
+                        "Cannot find credentials with username provided",
+                        Response.Status.NOT_FOUND);
+            }
+            return cred;
+        });
     }
 
     /**
      * Updates a Credential value in the database
+     * @param async suspended response
      * @param c credential to be updated
      * @param id of employee
-     * @return response
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @Path("{id}")
     @PATCH
     @Consumes("application/json")
-    public Response merge(Credentials c, @PathParam("id") Integer id) {
+    public void merge(@Suspended AsyncResponse async, Credentials c,
+            @PathParam("id") Integer id) {
         Response res = checkCred(authEmployee, id);
-        if (res != null) return res;
-        try {
-            credentialsManager.merge(c, id);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
+        if (res != null) {
+            async.resume(res);
+            return;
         }
-        return Response.ok().build();
+        daoExecutor.submitWrite(async, "credentials.merge", () -> {
+            try {
+                credentialsManager.merge(c, id);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.ok().build();
+        });
     }
     
     /**
      * Adds a set of credentials to the CredentialsDatabase AKA "Persist".
+     * @param async suspended response, resumed with 201
      * @param credentials The set of credentials to be added to the CredentialsDatabase.
      */
     @Secured({ Permission.ADMIN })
     @POST
     @Consumes("application/json")
-    public Response addCredentials(Credentials credentials) {
-        try {
-            if (!authEmployee.getIsAdmin())
-                return Response.status(Response.Status.UNAUTHORIZED).entity(
-                    "Cannot create credentials as a non-admin!").build();
-            credentialsManager.addCredentialsToken(credentials);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
+    public void addCredentials(@Suspended AsyncResponse async,
+            Credentials credentials) {
+        if (!authEmployee.getIsAdmin()) {
+            async.resume(Response.status(Response.Status.UNAUTHORIZED).entity(
+                    "Cannot create credentials as a non-admin!").build());
+            return;
         }
-        return Response.created(URI.create("/credentials/" +
-                credentials.getEmployeeNumber())).build();
+        daoExecutor.submitWrite(async, "credentials.add", () -> {
+            try {
+                credentialsManager.addCredentialsToken(credentials);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.created(URI.create("/credentials/" +
+                    credentials.getEmployeeNumber())).build();
+        });
     }
 
     /**
@@ -0,0 +1,362 @@
+package ca.bcit.infosys.restful;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import ca.bcit.infosys.employee.Employee;
+
+/**
+ * Bounded pool that runs the database work of suspended REST requests, so
+ * that container I/O threads are released while JDBC calls block.
+ * By default the work runs on a fixed pool of container threads. With
+ * virtual threads each request gets a new virtual thread instead, and a
+ * semaphore sized to the datasource's connection pool bounds how many run
+ * at once; the others wait on the semaphore rather than in a queue.
+ * Configured through system properties:
+ * <ul>
+ * <li>timesheet.dao.virtual - true to run the work on virtual threads
+ * (JDK 21 or later) instead of container threads</li>
+ * <li>timesheet.dao.threads - worker threads, 16 by default</li>
+ * <li>timesheet.dao.connections - with virtual threads, requests running
+ * at once; set it to the datasource's max-pool-size, 20 by default</li>
+ * <li>timesheet.dao.queue - requests waiting for a worker or a connection,
+ * 100 by default; further requests get 503</li>
+ * <li>timesheet.dao.timeout.seconds - timeout of a request, 30 by
+ * default; see submit and submitWrite for what it covers</li>
+ * <li>timesheet.dao.timeout.&lt;endpoint&gt;.seconds - the same for one
+ * endpoint, for example timesheet.dao.timeout.timesheets.list.seconds</li>
+ * </ul>
+ * The counters are published over JMX by MetricsPublisher.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@ApplicationScoped
+public class DaoExecutor implements DaoExecutorMXBean {
+
+    /** Threads from the container, so naming and class loading work. */
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @Inject
+    private RequestContextRunner contextRunner;
+
+    /** Container thread pool, or null with virtual threads. */
+    private ThreadPoolExecutor pool;
+
+    /** Starts a virtual thread per request, or null without. */
+    private ExecutorService perTask;
+
+    /** Connections the virtual threads may hold at once. */
+    private Semaphore connections;
+
+    private int connectionCount;
+
+    /** Virtual thread requests admitted and not yet finished. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private int maxPending;
+
+    private long defaultTimeoutSeconds;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Creates the pool from the configured sizes.
+     */
+    @PostConstruct
+    void start() {
+        final int queue = Integer.getInteger("timesheet.dao.queue", 100);
+        defaultTimeoutSeconds = Long.getLong("timesheet.dao.timeout.seconds", 30);
+        if (Boolean.getBoolean("timesheet.dao.virtual")) {
+            perTask = virtualThreadPerTaskExecutor();
+        }
+        if (perTask != null) {
+            connectionCount = Integer.getInteger("timesheet.dao.connections", 20);
+            connections = new Semaphore(connectionCount, true);
+            maxPending = connectionCount + queue;
+            return;
+        }
+        final int threads = Integer.getInteger("timesheet.dao.threads", 16);
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queue), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets an executor that starts a new virtual thread for every task.
+     * Looked up reflectively so that the application still builds and runs
+     * on Java 8.
+     * @return virtual thread per task executor, or null before JDK 21
+     */
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual")
+                    .invoke(null);
+            final ThreadFactory factory = (ThreadFactory) Class.forName(
+                    "java.lang.Thread$Builder").getMethod("factory")
+                    .invoke(builder);
+            return (ExecutorService) Executors.class.getMethod(
+                    "newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Stops accepting work when the application is undeployed.
+     */
+    @PreDestroy
+    void stop() {
+        if (pool != null) {
+            pool.shutdown();
+        } else {
+            perTask.shutdown();
+        }
+    }
+
+    /**
+     * Starts a task on a pool thread, or on a new virtual thread once a
+     * connection permit is free.
+     * @param task to run
+     * @return handle to cancel the task with
+     * @throws RejectedExecutionException if the queue is full
+     */
+    private Future<?> start(Runnable task) {
+        if (pool != null) {
+            return pool.submit(task);
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException();
+        }
+        // cancelling the returned task skips it, but its thread still has
+        // to give up the pending slot; only a task that ran counts as done
+        final FutureTask<Void> future = new FutureTask<Void>(() -> {
+            task.run();
+            completed.incrementAndGet();
+        }, null);
+        try {
+            perTask.execute(() -> {
+                try {
+                    if (future.isCancelled()) {
+                        return;
+                    }
+                    connections.acquireUninterruptibly();
+                    try {
+                        future.run();
+                    } finally {
+                        connections.release();
+                    }
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Runs read-only work on the pool and resumes the suspended request
+     * with its result: a Response, an entity, or the exception it threw.
+     * The request gets 503 if the pool is saturated, or if the endpoint's
+     * timeout passes before the work finishes, whether it was still queued
+     * or running; the work is then cancelled and its worker interrupted.
+     * Use submitWrite for work with side effects.
+     * @param async suspended request
+     * @param endpoint name used to look up the endpoint's timeout
+     * @param work database work without side effects; must not use the
+     *      request's JAX-RS or CDI request context, which are not active on
+     *      pool threads
+     */
+    public void submit(final AsyncResponse async, String endpoint,
+            final Callable<?> work) {
+        final Future<?> task;
+        try {
+            task = start(() -> {
+                if (!async.isDone()) {
+                    resume(async, work);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            async.resume(busy());
+            return;
+        }
+        async.setTimeoutHandler(response -> {
+            timedOut.incrementAndGet();
+            response.resume(timedOut());
+            task.cancel(true);
+            if (pool != null) {
+                pool.remove((Runnable) task);
+            }
+        });
+        async.setTimeout(timeoutSeconds(endpoint), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs work with side effects on the pool and resumes the suspended
+     * request with its result. For writes the endpoint's timeout is only a
+     * deadline for waiting in the queue: a write still queued when it
+     * passes gets 503 and is never run, so 503 always means nothing was
+     * written. A write that has started is not timed out; the client gets
+     * its real outcome however long the database takes.
+     * @param async suspended request
+     * @param endpoint name used to look up the endpoint's timeout
+     * @param work database work; must not use the request's JAX-RS or CDI
+     *      request context, which are not active on pool threads
+     */
+    public void submitWrite(final AsyncResponse async, String endpoint,
+            final Callable<?> work) {
+        final long deadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(timeoutSeconds(endpoint));
+        try {
+            start(() -> {
+                if (System.nanoTime() - deadline > 0) {
+                    timedOut.incrementAndGet();
+                    async.resume(timedOut());
+                    return;
+                }
+                resume(async, work);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            async.resume(busy());
+        }
+    }
+
+    /**
+     * Calls work in a request context of its own and resumes the request
+     * with its outcome.
+     * @param async suspended request
+     * @param work to call
+     */
+    private void resume(AsyncResponse async, Callable<?> work) {
+        try {
+            async.resume(contextRunner.call(work));
+        } catch (Throwable e) {
+            async.resume(e);
+        }
+    }
+
+    /**
+     * Gets the configured timeout of an endpoint.
+     * @param endpoint name of the endpoint
+     * @return timeout in seconds
+     */
+    private long timeoutSeconds(String endpoint) {
+        return Long.getLong("timesheet.dao.timeout." + endpoint + ".seconds",
+                defaultTimeoutSeconds);
+    }
+
+    private static Response busy() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity("Server busy").build();
+    }
+
+    private static Response timedOut() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .entity("Request timed out").build();
+    }
+
+    /**
+     * Copies the authenticated employee so that it can be used on a pool
+     * thread, where its request-scoped producer is not active.
+     * @param authEmployee injected authenticated employee
+     * @return detached copy
+     */
+    public static Employee detach(Employee authEmployee) {
+        final Employee caller = new Employee(authEmployee.getEmployeeNumber(),
+                authEmployee.getEmployeeName(), authEmployee.getUserName(),
+                authEmployee.getIsAdmin());
+        caller.setPermission(authEmployee.getPermission());
+        return caller;
+    }
+
+    /**
+     * Checks whether the work runs on virtual threads.
+     * @return true if timesheet.dao.virtual is set and supported
+     */
+    @Override
+    public boolean isVirtual() {
+        return perTask != null;
+    }
+
+    /**
+     * Gets the number of requests waiting for a worker.
+     * @return queue depth
+     */
+    @Override
+    public int getQueueDepth() {
+        if (pool != null) {
+            return pool.getQueue().size();
+        }
+        return Math.max(0, pending.get() - getActiveCount());
+    }
+
+    /**
+     * Gets the number of workers running a request.
+     * @return active worker count
+     */
+    @Override
+    public int getActiveCount() {
+        if (pool != null) {
+            return pool.getActiveCount();
+        }
+        return connectionCount - connections.availablePermits();
+    }
+
+    /**
+     * Gets the number of requests completed by the pool.
+     * @return completed count
+     */
+    @Override
+    public long getCompletedCount() {
+        return pool != null ? pool.getCompletedTaskCount() : completed.get();
+    }
+
+    /**
+     * Gets the number of requests turned away because the queue was full.
+     * @return rejected count
+     */
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of requests that timed out.
+     * @return timed out count
+     */
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+}
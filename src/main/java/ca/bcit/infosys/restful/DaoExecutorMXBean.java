@@ -0,0 +1,47 @@
+package ca.bcit.infosys.restful;
+
+/**
+ * Counters of the pool that runs the REST requests' database work, as seen
+ * through JMX.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+public interface DaoExecutorMXBean {
+
+    /**
+     * Checks whether the work runs on virtual threads.
+     * @return true if timesheet.dao.virtual is set and supported
+     */
+    boolean isVirtual();
+
+    /**
+     * Gets the number of requests waiting for a worker.
+     * @return queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Gets the number of workers running a request.
+     * @return active worker count
+     */
+    int getActiveCount();
+
+    /**
+     * Gets the number of requests completed by the pool.
+     * @return completed count
+     */
+    long getCompletedCount();
+
+    /**
+     * Gets the number of requests turned away because the queue was full.
+     * @return rejected count
+     */
+    long getRejectedCount();
+
+    /**
+     * Gets the number of requests that timed out.
+     * @return timed out count
+     */
+    long getTimedOutCount();
+}
@@ -0,0 +1,325 @@
+package ca.bcit.infosys.restful;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.enterprise.util.AnnotationLiteral;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import ca.bcit.infosys.employee.Employee;
+import ca.bcit.infosys.timesheet.Timesheet;
+import ca.bcit.infosys.timesheet.TimesheetRow;
+
+/**
+ * Writes timesheets, timesheet rows and employees (single or as arrays)
+ * with a streaming JSON generator instead of reflective serialization.
+ * Only stored fields are written by default; computed fields such as
+ * totals, week number and the alternative hour encodings are added when
+ * the resource set the entity with entity(builder, value, true), as it does
+ * for requests with the query parameter derived=true. The flag travels with
+ * the response because writeTo runs on whichever thread resumes the
+ * request, where the request's UriInfo may not be usable.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class DomainJsonWriter implements MessageBodyWriter<Object> {
+
+    /** Generator factory; factories are thread-safe. */
+    static final JsonGeneratorFactory GENERATORS =
+            Json.createGeneratorFactory(Collections.<String, Object>emptyMap());
+
+    /** Appended to the ETag of a representation with computed fields. */
+    private static final String DERIVED_TAG_SUFFIX = "-d";
+
+    /** Response annotations of an entity to be written with computed fields. */
+    private static final Annotation[] WITH_DERIVED = {new DerivedLiteral()};
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType) {
+        final Class<?> element = type.isArray() ? type.getComponentType() : type;
+        return element == Timesheet.class || element == TimesheetRow.class
+                || element == Employee.class;
+    }
+
+    @Override
+    public long getSize(Object t, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType,
+            Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        final boolean derived = isDerived(annotations);
+        // closing the generator would close the container's stream
+        final JsonGenerator gen = GENERATORS.createGenerator(
+                new NonClosingStream(entityStream), StandardCharsets.UTF_8);
+        if (value instanceof Object[]) {
+            gen.writeStartArray();
+            for (Object element : (Object[]) value) {
+                write(gen, null, element, derived);
+            }
+            gen.writeEnd();
+        } else {
+            write(gen, null, value, derived);
+        }
+        gen.close();
+    }
+
+    /**
+     * Checks whether a request asked for computed fields. Call on the
+     * request thread; the injected UriInfo is not usable on pool threads.
+     * @param uriInfo of the request, or null
+     * @return true if derived=true was given
+     */
+    static boolean isDerivedRequested(UriInfo uriInfo) {
+        return uriInfo != null && "true".equalsIgnoreCase(
+                uriInfo.getQueryParameters().getFirst("derived"));
+    }
+
+    /**
+     * Sets the entity of a response, marked to be written with computed
+     * fields if derived is true.
+     * @param builder response to set the entity of
+     * @param entity timesheet, timesheet row or employee, or an array of them
+     * @param derived true to write computed fields
+     * @return builder
+     */
+    static Response.ResponseBuilder entity(Response.ResponseBuilder builder,
+            Object entity, boolean derived) {
+        return derived ? builder.entity(entity, WITH_DERIVED.clone())
+                : builder.entity(entity);
+    }
+
+    /**
+     * Checks whether an entity was marked by entity() to be written with
+     * computed fields.
+     * @param annotations annotations passed to writeTo
+     * @return true to write computed fields
+     */
+    private static boolean isDerived(Annotation[] annotations) {
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                if (annotation.annotationType() == Derived.class) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the strong ETag of one representation of a resource. The
+     * representation with computed fields has different bytes, so it gets
+     * its own tag.
+     * @param version of the resource
+     * @param derived true if computed fields are written
+     * @return entity tag
+     */
+    static EntityTag tag(String version, boolean derived) {
+        return new EntityTag(derived ? version + DERIVED_TAG_SUFFIX : version);
+    }
+
+    /**
+     * Checks whether an If-Match header names the representation with
+     * computed fields, so that writes accept the tag of either form.
+     * @param ifMatch If-Match header
+     * @return true if it carries a derived tag
+     */
+    static boolean isDerivedTag(String ifMatch) {
+        return ifMatch.contains(DERIVED_TAG_SUFFIX + "\"");
+    }
+
+    /**
+     * Writes one domain object.
+     * @param gen generator to write to
+     * @param name property name, or null for an array element or top level
+     * @param value timesheet, timesheet row or employee
+     * @param derived true to include computed fields
+     */
+    private static void write(JsonGenerator gen, String name, Object value,
+            boolean derived) {
+        if (value instanceof Timesheet) {
+            writeTimesheet(gen, name, (Timesheet) value, derived);
+        } else if (value instanceof TimesheetRow) {
+            writeRow(gen, name, (TimesheetRow) value, derived);
+        } else if (value instanceof Employee) {
+            writeEmployee(gen, name, (Employee) value, derived);
+        } else if (name == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNull(name);
+        }
+    }
+
+    /**
+     * Writes a timesheet with its employee and rows.
+     * @param gen generator to write to
+     * @param name property name, or null for an array element or top level
+     * @param timesheet to write
+     * @param derived true to include computed fields
+     */
+    static void writeTimesheet(JsonGenerator gen, String name,
+            Timesheet timesheet, boolean derived) {
+        startObject(gen, name);
+        gen.write("timesheetId", timesheet.getTimesheetId());
+        gen.write("version", timesheet.getVersion());
+        if (timesheet.getEndDate() != null) {
+            gen.write("endDate", timesheet.getEndDate().toString());
+        }
+        if (timesheet.getEmployee() != null) {
+            writeEmployee(gen, "employee", timesheet.getEmployee(), derived);
+        }
+        if (timesheet.getDetails() != null) {
+            gen.writeStartArray("details");
+            for (TimesheetRow row : timesheet.getDetails()) {
+                writeRow(gen, null, row, derived);
+            }
+            gen.writeEnd();
+        }
+        if (derived) {
+            if (timesheet.getEndDate() != null) {
+                gen.write("weekNumber", timesheet.getWeekNumber());
+                gen.write("weekEnding", timesheet.getWeekEnding());
+            }
+            gen.write("overtimeDecihours", timesheet.getOvertimeDecihours());
+            gen.write("flextimeDecihours", timesheet.getFlextimeDecihours());
+            gen.write("totalDecihours", timesheet.getTotalDecihours());
+            gen.write("totalHours", timesheet.getTotalHours());
+            gen.writeStartArray("dailyDecihours");
+            for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+                gen.write(timesheet.getDailyDecihour(d));
+            }
+            gen.writeEnd();
+            gen.write("valid", timesheet.isValid());
+        }
+        gen.writeEnd();
+    }
+
+    /**
+     * Writes a timesheet row.
+     * @param gen generator to write to
+     * @param name property name, or null for an array element or top level
+     * @param row to write
+     * @param derived true to include computed fields
+     */
+    static void writeRow(JsonGenerator gen, String name, TimesheetRow row,
+            boolean derived) {
+        startObject(gen, name);
+        gen.write("projectId", row.getProjectId());
+        if (row.getWorkPackageId() != null) {
+            gen.write("workPackageId", row.getWorkPackageId());
+        }
+        if (row.getNotes() != null) {
+            gen.write("notes", row.getNotes());
+        }
+        gen.writeStartArray("totalWeekHours");
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            gen.write(TimesheetRow.toBigDecimalHour(row.getDecihour(d)));
+        }
+        gen.writeEnd();
+        if (derived) {
+            gen.write("sum", row.getSum());
+            gen.write("deciSum", row.getDeciSum());
+            gen.write("packedHours", row.getPackedHours());
+        }
+        gen.writeEnd();
+    }
+
+    /**
+     * Writes an employee.
+     * @param gen generator to write to
+     * @param name property name, or null for an array element or top level
+     * @param employee to write
+     * @param derived true to include computed fields
+     */
+    static void writeEmployee(JsonGenerator gen, String name,
+            Employee employee, boolean derived) {
+        startObject(gen, name);
+        gen.write("employeeNumber", employee.getEmployeeNumber());
+        if (employee.getEmployeeName() != null) {
+            gen.write("employeeName", employee.getEmployeeName());
+        }
+        if (employee.getUserName() != null) {
+            gen.write("userName", employee.getUserName());
+        }
+        gen.write("isAdmin", employee.getIsAdmin());
+        if (derived && employee.getPermission() != null) {
+            gen.write("permission", employee.getPermission().name());
+        }
+        gen.writeEnd();
+    }
+
+    /**
+     * Starts an object, named if inside another object.
+     * @param gen generator to write to
+     * @param name property name, or null for an array element or top level
+     */
+    private static void startObject(JsonGenerator gen, String name) {
+        if (name == null) {
+            gen.writeStartObject();
+        } else {
+            gen.writeStartObject(name);
+        }
+    }
+
+    /**
+     * Output stream that flushes instead of closing the stream it wraps.
+     */
+    static final class NonClosingStream extends FilterOutputStream {
+
+        NonClosingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Marks a response entity to be written with computed fields.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({})
+    @interface Derived {
+    }
+
+    /**
+     * Instance of Derived, for response annotations.
+     */
+    private static final class DerivedLiteral
+            extends AnnotationLiteral<Derived> implements Derived {
+        private static final long serialVersionUID = 1L;
+    }
+}
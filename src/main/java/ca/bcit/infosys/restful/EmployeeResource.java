@@ -7,13 +7,22 @@ import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PATCH;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
 
 import ca.bcit.infosys.authentication.AuthenticatedEmployee;
 import ca.bcit.infosys.authentication.Permission;
@@ -33,109 +42,181 @@ public class EmployeeResource {
     
     
     /**
-     * Gets the list of employees.
-     * @return The list of Employees as an Array.
+     * Maximum number of employees returned in a single page
+     */
+    private static final int MAX_PAGE_SIZE = 500;
+
+    @Context
+    private UriInfo uriInfo;
+
+    @Inject
+    private DaoExecutor daoExecutor;
+    
+    /**
+     * Gets the list of employees, or a single page of them when either after
+     * or limit is given. Paged responses carry a "next" Link header whose
+     * after parameter is the cursor of the following page. The ETag is the
+     * directory version, suffixed with -d when derived=true; if
+     * If-None-Match still names it the response is 304 and no employees are
+     * loaded.
+     * @param async suspended response, resumed with the list of Employees
+     *      as an Array
+     * @param after cursor (employeeNumber) of the last employee already seen
+     * @param limit maximum number of employees in the page
+     * @param ifNoneMatch ETag of the caller's copy, or null
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @GET
     @Produces("application/json")
-    public Employee[] getEmployeeList() {
-        Employee[] employees;
-        try {
-            List<Employee> employeeList = employeeManager.getEmployeeList();
-            employees = new Employee[employeeList.size()];
-            for (int i = 0; i < employeeList.size(); i++) employees[i] = employeeList.get(i);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+    public void getEmployeeList(@Suspended AsyncResponse async,
+            @QueryParam("after") Integer after,
+            @QueryParam("limit") Integer limit,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        final boolean paged = after != null || limit != null;
+        final int pageSize = limit == null ? MAX_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new WebApplicationException("limit must be between 1 and "
+                    + MAX_PAGE_SIZE, Response.Status.BAD_REQUEST);
         }
-        if (employees.length == 0) throw new WebApplicationException(
-                "Employee list is empty", Response.Status.NOT_FOUND);
-        return employees;
+        final UriBuilder nextUri = uriInfo.getRequestUriBuilder();
+        final boolean derived = DomainJsonWriter.isDerivedRequested(uriInfo);
+        daoExecutor.submit(async, "employees.list", () -> {
+            Employee[] employees;
+            Integer next = null;
+            EntityTag tag;
+            try {
+                tag = DomainJsonWriter.tag(employeeManager.getDirectoryVersion(),
+                        derived);
+                Response.ResponseBuilder notModified =
+                        Preconditions.ifNoneMatch(ifNoneMatch, tag);
+                if (notModified != null) {
+                    return notModified.build();
+                }
+                List<Employee> employeeList = paged
+                        ? employeeManager.getEmployeePage(
+                                after == null ? 0 : after, pageSize + 1)
+                        : employeeManager.getEmployeeList();
+                if (paged && employeeList.size() > pageSize) {
+                    employeeList = employeeList.subList(0, pageSize);
+                    next = employeeList.get(pageSize - 1).getEmployeeNumber();
+                }
+                employees = employeeList.toArray(new Employee[employeeList.size()]);
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new WebApplicationException(e,
+                        Response.Status.INTERNAL_SERVER_ERROR);
+            }
+            if (!paged && employees.length == 0) throw new WebApplicationException(
+                    "Employee list is empty", Response.Status.NOT_FOUND);
+            Response.ResponseBuilder builder = DomainJsonWriter.entity(
+                    Response.ok(), employees, derived).tag(tag);
+            if (next != null) {
+                builder.link(nextUri.replaceQueryParam("after", next)
+                        .replaceQueryParam("limit", pageSize).build(), "next");
+            }
+            return builder.build();
+        });
     }
     
     /**
      * Gets the employee with the specified employee number.
+     * @param async suspended response, resumed with the employee
      * @param id of employee
-     * @return The employee with the specified employee number.
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @GET
     @Path("{id}")
     @Produces("application/json")
-    public Employee find(@PathParam("id") Integer id) {
-        Employee employee = employeeManager.getEmployeeByNumber(id);
-        if (employee == null) {
-            throw new WebApplicationException(Response.Status.NOT_FOUND);
-        }
-        return employee;
+    public void find(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id) {
+        final boolean derived = DomainJsonWriter.isDerivedRequested(uriInfo);
+        daoExecutor.submit(async, "employees.get", () -> {
+            Employee employee = employeeManager.getEmployeeByNumber(id);
+            if (employee == null) {
+                throw new WebApplicationException(Response.Status.NOT_FOUND);
+            }
+            return DomainJsonWriter.entity(Response.ok(), employee, derived)
+                    .build();
+        });
     }
 
     /**
      * Updates an existing employee record in the employees table AKA "Merge"
      *
+     * @param async suspended response
      * @param id of employee to be edited
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @Path("{id}")
     @PATCH
     @Consumes("application/json")
-    public Response editEmployee(@PathParam("id") Integer id) {
+    public void editEmployee(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id) {
         if (!authEmployee.getIsAdmin() &&
                 authEmployee.getEmployeeNumber() != id) {
             throw new WebApplicationException("Cannot edit another employee's "
                     + "credentials!", Response.Status.UNAUTHORIZED);
         }
-        try {
-            Employee employee = employeeManager.getEmployeeByNumber(id);
-            employeeManager.editEmployee(employee);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
-        }
-        return Response.ok().build();
+        daoExecutor.submitWrite(async, "employees.edit", () -> {
+            try {
+                Employee employee = employeeManager.getEmployeeByNumber(id);
+                employeeManager.editEmployee(employee);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.ok().build();
+        });
     }
     
     /**
      * Adds the employee of interest into database AKA "Persist"
+     * @param async suspended response, resumed with 201
      * @param employee The employee to be added.
      */
     @Secured({ Permission.ADMIN })
     @POST
     @Consumes("application/json")
-    public Response addEmployee(Employee employee) {
+    public void addEmployee(@Suspended AsyncResponse async,
+            Employee employee) {
         if (!authEmployee.getIsAdmin()) {
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
-        try {
-            employeeManager.addEmployee(employee);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
-        }
-        return Response.created(URI.create("/employees/" + 
-                employee.getEmployeeNumber())).build();
+        daoExecutor.submitWrite(async, "employees.add", () -> {
+            try {
+                employeeManager.addEmployee(employee);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.created(URI.create("/employees/" + 
+                    employee.getEmployeeNumber())).build();
+        });
     }
 
     /**
      * Deletes the employee of interest from database AKA "Remove".
+     * @param async suspended response
      * @param id of the employee to be deleted.
      */
     @Secured({ Permission.ADMIN })
     @Path("{id}")
     @DELETE
-    public Response remove(@PathParam("id") Integer id) {
+    public void remove(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id) {
         if (!authEmployee.getIsAdmin()) {
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
         }
-        try {
-            Employee employee = employeeManager.getEmployeeByNumber(id);
-            employeeManager.deleteEmployee(employee);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
-        }
-        return Response.ok().build();
+        daoExecutor.submitWrite(async, "employees.remove", () -> {
+            try {
+                Employee employee = employeeManager.getEmployeeByNumber(id);
+                employeeManager.deleteEmployee(employee);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.ok().build();
+        });
     }
 
 }
@@ -0,0 +1,105 @@
+package ca.bcit.infosys.restful;
+
+import java.lang.management.ManagementFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import ca.bcit.infosys.authentication.TokenCache;
+import ca.bcit.infosys.authentication.TokenCacheMXBean;
+import ca.bcit.infosys.manager.EmployeeCache;
+import ca.bcit.infosys.manager.EmployeeCacheMXBean;
+
+/**
+ * Publishes the request pool, token cache and employee cache counters as
+ * MXBeans on the platform MBean server when the application starts, so that they can be
+ * read with jconsole or any other JMX client.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@ApplicationScoped
+public class MetricsPublisher {
+
+    /** JMX name of the request pool's counters. */
+    static final String DAO_EXECUTOR = "ca.bcit.infosys:type=DaoExecutor";
+
+    /** JMX name of the token cache's counters. */
+    static final String TOKEN_CACHE = "ca.bcit.infosys:type=TokenCache";
+
+    /** JMX name of the employee cache's counters. */
+    static final String EMPLOYEE_CACHE = "ca.bcit.infosys:type=EmployeeCache";
+
+    @Inject
+    private DaoExecutor daoExecutor;
+
+    @Inject
+    private TokenCache tokenCache;
+
+    @Inject
+    private EmployeeCache employeeCache;
+
+    /**
+     * Registers the MXBeans once the application scope is active.
+     * @param init ignored
+     */
+    void publish(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        register(DAO_EXECUTOR, daoExecutor, DaoExecutorMXBean.class);
+        register(TOKEN_CACHE, tokenCache, TokenCacheMXBean.class);
+        register(EMPLOYEE_CACHE, employeeCache, EmployeeCacheMXBean.class);
+    }
+
+    /**
+     * Removes the MXBeans when the application is undeployed.
+     */
+    @PreDestroy
+    void withdraw() {
+        unregister(DAO_EXECUTOR);
+        unregister(TOKEN_CACHE);
+        unregister(EMPLOYEE_CACHE);
+    }
+
+    /**
+     * Publishes an MXBean, replacing one left by an earlier deployment. The
+     * interface is given explicitly because the bean is a CDI proxy.
+     * @param name object name
+     * @param bean to publish
+     * @param type its MXBean interface
+     * @param <T> MXBean interface
+     */
+    private static <T> void register(String name, T bean, Class<T> type) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(bean, type, true), objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes an MXBean if it is registered.
+     * @param name object name
+     */
+    private static void unregister(String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
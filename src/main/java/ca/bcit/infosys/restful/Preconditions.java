@@ -0,0 +1,73 @@
+package ca.bcit.infosys.restful;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+/**
+ * Evaluates If-Match and If-None-Match on DaoExecutor threads. The
+ * request's injected javax.ws.rs.core.Request only works on the thread
+ * that received the request, so resources read the header with
+ * HeaderParam on that thread and pass its value here.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+final class Preconditions {
+
+    /** One entry of an entity tag list: *, "tag" or W/"tag". */
+    private static final Pattern ENTRY = Pattern.compile("\\*|(W/)?\"([^\"]*)\"");
+
+    private Preconditions() {
+    }
+
+    /**
+     * Evaluates If-None-Match against the current tag of a resource.
+     * @param ifNoneMatch If-None-Match header, or null
+     * @param tag current entity tag
+     * @return 304 builder carrying the tag if the header names it, else null
+     */
+    static Response.ResponseBuilder ifNoneMatch(String ifNoneMatch,
+            EntityTag tag) {
+        if (ifNoneMatch == null || !matches(ifNoneMatch, tag, true)) {
+            return null;
+        }
+        return Response.notModified(tag);
+    }
+
+    /**
+     * Evaluates If-Match against the current tag of a resource.
+     * @param ifMatch If-Match header, or null
+     * @param tag current entity tag
+     * @return 412 builder if the header does not name the tag, else null
+     */
+    static Response.ResponseBuilder ifMatch(String ifMatch, EntityTag tag) {
+        if (ifMatch == null || matches(ifMatch, tag, false)) {
+            return null;
+        }
+        return Response.status(Response.Status.PRECONDITION_FAILED);
+    }
+
+    /**
+     * Checks whether an entity tag list names a tag.
+     * @param header list of entity tags, or *
+     * @param tag current strong entity tag
+     * @param weak true to also accept the weak form of the tag, as
+     *      If-None-Match does
+     * @return true if the list matches
+     */
+    private static boolean matches(String header, EntityTag tag, boolean weak) {
+        final Matcher m = ENTRY.matcher(header);
+        while (m.find()) {
+            if (m.group(2) == null) {
+                return true;
+            }
+            if ((weak || m.group(1) == null) && m.group(2).equals(tag.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
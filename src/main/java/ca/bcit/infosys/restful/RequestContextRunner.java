@@ -0,0 +1,30 @@
+package ca.bcit.infosys.restful;
+
+import java.util.concurrent.Callable;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.ActivateRequestContext;
+
+/**
+ * Runs work with a CDI request context of its own, so that request-scoped
+ * beans such as the managers' identity map are available on DaoExecutor
+ * threads.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@ApplicationScoped
+public class RequestContextRunner {
+
+    /**
+     * Calls work inside a new request context, ended when work returns.
+     * @param work to call
+     * @param <T> result type
+     * @return result of work
+     * @throws Exception thrown by work
+     */
+    @ActivateRequestContext
+    public <T> T call(Callable<T> work) throws Exception {
+        return work.call();
+    }
+}
@@ -1,22 +1,41 @@
 package ca.bcit.infosys.restful;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.util.List;
 
 import javax.inject.Inject;
+import javax.json.JsonException;
+import javax.json.stream.JsonGenerator;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PATCH;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
 
 import ca.bcit.infosys.employee.Employee;
 import ca.bcit.infosys.authentication.AuthenticatedEmployee;
 import ca.bcit.infosys.authentication.Secured;
+import ca.bcit.infosys.manager.StaleTimesheetException;
 import ca.bcit.infosys.manager.TimesheetManager;
 import ca.bcit.infosys.timesheet.Timesheet;
 import ca.bcit.infosys.authentication.Permission;
@@ -32,107 +51,280 @@ public class TimesheetResource {
     private Employee authEmployee;
     
     /**
-     * Gets a list of all timesheets
-     * @return list containing timesheets
+     * Maximum number of timesheets returned in a single page
+     */
+    private static final int MAX_PAGE_SIZE = 500;
+
+    @Context
+    private UriInfo uriInfo;
+
+    @Inject
+    private DaoExecutor daoExecutor;
+    
+    /**
+     * Gets a list of all timesheets, or a single page of them when either
+     * after or limit is given. Paged responses carry a "next" Link header
+     * whose after parameter is the cursor of the following page.
+     * @param async suspended response, resumed with the timesheets
+     * @param after cursor (timesheetId) of the last timesheet already seen
+     * @param limit maximum number of timesheets in the page
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @GET
     @Produces("application/json")
-    public Timesheet[] getTimesheets() {
+    public void getTimesheets(@Suspended AsyncResponse async,
+            @QueryParam("after") Integer after,
+            @QueryParam("limit") Integer limit) {
         if (!authEmployee.getIsAdmin()) {
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
-        }   
-        Timesheet[] arr;
-        try {
-            List<Timesheet> list = tsManager.getTimesheets();
-            arr = new Timesheet[list.size()];
-            for (int i = 0; i < list.size(); i++) arr[i] = list.get(i);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
         }
-        return arr;
+        final boolean paged = after != null || limit != null;
+        final int pageSize = limit == null ? MAX_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new WebApplicationException("limit must be between 1 and "
+                    + MAX_PAGE_SIZE, Response.Status.BAD_REQUEST);
+        }
+        final UriBuilder nextUri = uriInfo.getRequestUriBuilder();
+        final boolean derived = DomainJsonWriter.isDerivedRequested(uriInfo);
+        daoExecutor.submit(async, "timesheets.list", () -> {
+            Timesheet[] arr;
+            Integer next = null;
+            try {
+                List<Timesheet> list = paged
+                        ? tsManager.getTimesheetPage(after == null ? 0 : after,
+                                pageSize + 1)
+                        : tsManager.getTimesheets();
+                if (paged && list.size() > pageSize) {
+                    list = list.subList(0, pageSize);
+                    next = list.get(pageSize - 1).getTimesheetId();
+                }
+                arr = list.toArray(new Timesheet[list.size()]);
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new WebApplicationException(e,
+                        Response.Status.INTERNAL_SERVER_ERROR);
+            }
+            Response.ResponseBuilder builder =
+                    DomainJsonWriter.entity(Response.ok(), arr, derived);
+            if (next != null) {
+                builder.link(nextUri.replaceQueryParam("after", next)
+                        .replaceQueryParam("limit", pageSize).build(), "next");
+            }
+            return builder.build();
+        });
     }
 
     /**
-     * Gets a timesheet with the specified ID
+     * Exports every timesheet as newline-delimited JSON. Timesheets are
+     * written as they are read from the database rather than collected into
+     * a list first. The export stays on the request thread: it writes to
+     * the response while it reads.
+     * @return streaming response of timesheets, one JSON object per line
+     */
+    @Secured({ Permission.ADMIN, Permission.USER })
+    @GET
+    @Path("export")
+    @Produces("application/x-ndjson")
+    public Response exportTimesheets() {
+        if (!authEmployee.getIsAdmin()) {
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        }
+        final boolean derived = DomainJsonWriter.isDerivedRequested(uriInfo);
+        StreamingOutput stream = output -> {
+            final OutputStream out = new DomainJsonWriter.NonClosingStream(
+                    new BufferedOutputStream(output));
+            try {
+                tsManager.exportTimesheets(timesheet -> {
+                    JsonGenerator gen = DomainJsonWriter.GENERATORS
+                            .createGenerator(out, StandardCharsets.UTF_8);
+                    DomainJsonWriter.writeTimesheet(gen, null, timesheet,
+                            derived);
+                    gen.close();
+                    try {
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (JsonException e) {
+                throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause() : new IOException(e);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                throw new WebApplicationException(e,
+                        Response.Status.INTERNAL_SERVER_ERROR);
+            }
+            out.flush();
+        };
+        return Response.ok(stream).build();
+    }
+
+    /**
+     * Gets a timesheet with the specified ID. The ETag is the timesheet's
+     * version, suffixed with -d when derived=true, for use in If-Match on
+     * later writes. A request whose If-None-Match still names the current
+     * version gets 304 after a version lookup, without loading the
+     * timesheet.
+     * @param async suspended response, resumed with the timesheet
      * @param id of the timesheet
-     * @return timesheet
+     * @param ifNoneMatch ETag of the caller's copy, or null
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @GET
     @Path("{id}")
     @Produces("application/json")
-    public Timesheet getTimesheetById(@PathParam("id") Integer id) {
-        Timesheet timesheet = null;
-        try {
-            timesheet = tsManager.find(id);
-            if (!authEmployee.getIsAdmin()
-                    && timesheet.getEmployee().getEmployeeNumber() !=
-                    authEmployee.getEmployeeNumber()) {
-                throw new WebApplicationException("Cannot access another " +
-                    "employee's timesheets!", Response.Status.UNAUTHORIZED);
+    public void getTimesheetById(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        final Employee caller = DaoExecutor.detach(authEmployee);
+        final boolean derived = DomainJsonWriter.isDerivedRequested(uriInfo);
+        daoExecutor.submit(async, "timesheets.get", () -> {
+            Timesheet timesheet = null;
+            try {
+                if (!caller.getIsAdmin()) {
+                    Integer owner = tsManager.getOwnerNumber(id);
+                    if (owner == null) {
+                        throw new WebApplicationException(
+                                Response.Status.NOT_FOUND);
+                    }
+                    if (owner != caller.getEmployeeNumber()) {
+                        throw new WebApplicationException("Cannot access "
+                                + "another employee's timesheets!",
+                                Response.Status.UNAUTHORIZED);
+                    }
+                }
+                Integer version = tsManager.getVersion(id);
+                if (version == null) {
+                    throw new WebApplicationException(Response.Status.NOT_FOUND);
+                }
+                Response.ResponseBuilder notModified = Preconditions
+                        .ifNoneMatch(ifNoneMatch, versionTag(version, derived));
+                if (notModified != null) {
+                    return notModified.build();
+                }
+                timesheet = tsManager.find(id);
+            } catch (WebApplicationException e) {
+                throw e;
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new WebApplicationException(e,
+                        Response.Status.INTERNAL_SERVER_ERROR);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
-        }
-        if (timesheet == null) {
-           throw new WebApplicationException(Response.Status.NOT_FOUND);
-        }
-        return timesheet;
+            if (timesheet == null) {
+                throw new WebApplicationException(Response.Status.NOT_FOUND);
+            }
+            return DomainJsonWriter.entity(Response.ok(), timesheet, derived)
+                    .tag(versionTag(timesheet.getVersion(), derived)).build();
+        });
     }
 
     /**
-     * Updates an existing timesheet
-     * @param timesheet to be updated
-     * @param timesheetId to identify timesheet
-     * @return Response object
+     * Updates an existing timesheet. With an If-Match header the update is
+     * only applied if the timesheet is still at that version.
+     * @param async suspended response, resumed with 412 if the timesheet
+     *      changed since ifMatch
+     * @param id to identify timesheet
+     * @param ifMatch ETag the update is based on, or null
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @PATCH
     @Path("{id}")
     @Consumes("application/json")
-    public Response updateTimesheet(@PathParam("id") Integer id) {
-        Timesheet timesheet = tsManager.find(id);
-        Response res = checkAuth(timesheet);
-        if (res != null) return res;
-        try {
-            tsManager.updateTimesheet(timesheet, id);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
-        }
-        return Response.ok().build();
+    public void updateTimesheet(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        final Employee caller = DaoExecutor.detach(authEmployee);
+        daoExecutor.submitWrite(async, "timesheets.update", () -> {
+            Timesheet timesheet = tsManager.find(id);
+            if (timesheet == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            Response res = checkAuth(caller, timesheet);
+            if (res != null) return res;
+            Integer expectedVersion = null;
+            if (ifMatch != null) {
+                Response.ResponseBuilder failed = evaluateIfMatch(ifMatch,
+                        timesheet.getVersion());
+                if (failed != null) {
+                    return failed.build();
+                }
+                expectedVersion = timesheet.getVersion();
+            }
+            try {
+                tsManager.updateTimesheet(timesheet, id, expectedVersion);
+            } catch (StaleTimesheetException e) {
+                return Response.status(Response.Status.PRECONDITION_FAILED)
+                        .entity(e.getMessage()).build();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.ok().build();
+        });
     }
     
     /**
      * Creates a new timesheet
+     * @param async suspended response, resumed with 201
      * @param timesheet to be created
-     * @return Response object
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @POST
     @Consumes("application/json")
-    public Response addTimesheet(Timesheet timesheet) {
-        Response res = checkAuth(timesheet);
-        if (res != null) return res;
-        try {
-            tsManager.addTimesheet(timesheet);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
+    public void addTimesheet(@Suspended AsyncResponse async,
+            Timesheet timesheet) {
+        Response res = checkAuth(authEmployee, timesheet);
+        if (res != null) {
+            async.resume(res);
+            return;
         }
-        return Response.created(URI.create("/timesheets/" +
-                timesheet.getTimesheetId())).build();
+        daoExecutor.submitWrite(async, "timesheets.add", () -> {
+            try {
+                tsManager.addTimesheet(timesheet);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.created(URI.create("/timesheets/" +
+                    timesheet.getTimesheetId())).build();
+        });
+    }
+
+    /**
+     * Builds the strong ETag of a timesheet version. Timesheets and their
+     * rows share a version, so the same tag is valid on /timesheets/{id}
+     * and /rows/{id}.
+     * @param version of the timesheet
+     * @param derived true if the response has computed fields
+     * @return entity tag
+     */
+    static EntityTag versionTag(int version, boolean derived) {
+        return DomainJsonWriter.tag(Integer.toString(version), derived);
+    }
+
+    /**
+     * Evaluates If-Match against a timesheet version. The tag of either
+     * representation matches, since both name the same stored version.
+     * @param ifMatch If-Match header
+     * @param version current version of the timesheet
+     * @return response builder if the precondition failed, else null
+     */
+    static Response.ResponseBuilder evaluateIfMatch(String ifMatch,
+            int version) {
+        return Preconditions.ifMatch(ifMatch, versionTag(version,
+                DomainJsonWriter.isDerivedTag(ifMatch)));
     }
 
     /**
      * Checks for authorization
+     * @param authEmployee to be checked
      * @param timesheet to be checked
      * @return response
      */
-    private Response checkAuth(Timesheet timesheet) {
+    private static Response checkAuth(Employee authEmployee,
+            Timesheet timesheet) {
         if (!authEmployee.getIsAdmin()
                 && timesheet.getEmployee().getEmployeeNumber() !=
                 authEmployee.getEmployeeNumber()) {
@@ -1,23 +1,33 @@
 package ca.bcit.infosys.restful;
 
 import java.net.URI;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PATCH;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import ca.bcit.infosys.employee.Employee;
 import ca.bcit.infosys.authentication.AuthenticatedEmployee;
 import ca.bcit.infosys.authentication.Secured;
+import ca.bcit.infosys.manager.StaleTimesheetException;
 import ca.bcit.infosys.manager.TimesheetManager;
 import ca.bcit.infosys.manager.TimesheetRowManager;
 import ca.bcit.infosys.timesheet.Timesheet;
@@ -37,117 +47,238 @@ public class TimesheetRowResource {
     @AuthenticatedEmployee
     private Employee authEmployee;
 
+    @Inject
+    private DaoExecutor daoExecutor;
+
+    @Context
+    private UriInfo uriInfo;
+
     /**
-     * Gets list of timesheet rows by timesheetId
+     * Gets list of timesheet rows by timesheetId. The ETag is the version of
+     * the timesheet, suffixed with -d when derived=true; if If-None-Match
+     * still names it the response is 304 and the rows are not loaded.
      *
+     * @param async suspended response, resumed with an array of
+     *      TimesheetRow objects
      * @param id of timesheet
-     * @return ArrayList of TimesheetRow objects
+     * @param ifNoneMatch ETag of the caller's copy, or null
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @GET
     @Path("{id}")
     @Produces("application/json")
-    public ArrayList<TimesheetRow> getTimesheetRows(@PathParam("id") Integer id) {
-        Response res = checkAuth(id);
-        if (res != null) throw new WebApplicationException((String) res.getEntity(),
-                res.getStatus());
-        ArrayList<TimesheetRow> rowsList;
-        try {
-            rowsList = tsRowManager.getTimesheetRows(id);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
-        }
-        if (rowsList == null) {
-            throw new WebApplicationException(Response.Status.NOT_FOUND);
-        }
-        return rowsList;
+    public void getTimesheetRows(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        final Employee caller = DaoExecutor.detach(authEmployee);
+        final boolean derived = DomainJsonWriter.isDerivedRequested(uriInfo);
+        daoExecutor.submit(async, "rows.get", () -> {
+            Response res = checkAuth(caller, id);
+            if (res != null) throw new WebApplicationException(
+                    (String) res.getEntity(), res.getStatus());
+            ArrayList<TimesheetRow> rowsList;
+            EntityTag tag;
+            try {
+                Integer version = tsManager.getVersion(id);
+                if (version == null) {
+                    throw new WebApplicationException(Response.Status.NOT_FOUND);
+                }
+                tag = TimesheetResource.versionTag(version, derived);
+                Response.ResponseBuilder notModified =
+                        Preconditions.ifNoneMatch(ifNoneMatch, tag);
+                if (notModified != null) {
+                    return notModified.build();
+                }
+                rowsList = tsRowManager.getTimesheetRows(id);
+            } catch (WebApplicationException e) {
+                throw e;
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+            }
+            if (rowsList == null) {
+                throw new WebApplicationException(Response.Status.NOT_FOUND);
+            }
+            return DomainJsonWriter.entity(Response.ok(),
+                    rowsList.toArray(new TimesheetRow[rowsList.size()]), derived)
+                    .tag(tag).build();
+        });
     }
 
     /**
-     * Edits TimesheetRow object in database (update)
+     * Edits TimesheetRow object in database (update). With an If-Match
+     * header the rows are only replaced if the timesheet is still at that
+     * version.
      *
-     * @param timesheetId specifies timesheet to add rows to
-     * @param rows specifies rows to be added
+     * @param async suspended response, resumed with 412 if the timesheet
+     *      changed since ifMatch
+     * @param id specifies timesheet to edit rows of
+     * @param ifMatch ETag the edit is based on, or null
+     * @param rows specifies the full set of rows
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @PATCH
     @Path("{id}")
     @Consumes("application/json")
-    public Response editRow(@PathParam("id") Integer id, 
+    public void editRow(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
             List<TimesheetRow> rows) {
-        Response res = checkAuth(id);
-        if (res != null) throw new WebApplicationException((String) res.getEntity(),
-                res.getStatus());
-        try {
-            Timesheet timesheet = tsManager.find(id);
-            if (timesheet == null) {
-                return Response.status(Response.Status.NOT_FOUND).entity("Could "
-                        + "not find timesheet via provided ID").build();
+        final Employee caller = DaoExecutor.detach(authEmployee);
+        daoExecutor.submitWrite(async, "rows.edit", () -> {
+            Response res = checkAuth(caller, id);
+            if (res != null) throw new WebApplicationException(
+                    (String) res.getEntity(), res.getStatus());
+            try {
+                Integer expectedVersion = null;
+                if (ifMatch != null) {
+                    expectedVersion = tsManager.getVersion(id);
+                    Response.ResponseBuilder failed = TimesheetResource
+                            .evaluateIfMatch(ifMatch, expectedVersion);
+                    if (failed != null) {
+                        return failed.build();
+                    }
+                }
+                if (!tsRowManager.editRow(id, rows, expectedVersion)) {
+                    return Response.status(Response.Status.CONFLICT).entity(
+                            "Duplicate ProjectID and WorkPackageID in rows").build();
+                }
+            } catch (final StaleTimesheetException e) {
+                return Response.status(Response.Status.PRECONDITION_FAILED)
+                        .entity(e.getMessage()).build();
+            } catch (final Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
             }
-            if (timesheet.getEmployee().getEmployeeNumber() !=
-                    authEmployee.getEmployeeNumber()) {
-                return Response.status(Response.Status.UNAUTHORIZED).entity(
-                        "Cannot edit another employee's timesheet").build();
-            }
-            tsRowManager.editRow(id, rows);
-            
-        } catch (final Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
-        }
-        return Response.noContent().build();
+            return Response.noContent().build();
+        });
     }
     
+    /**
+     * Sets the hours of a single day of one row, so that clients saving one
+     * cell do not have to send and rewrite the whole timesheet. The body is
+     * a bare JSON integer rather than a JSON Patch document: the resource
+     * path already names the cell, so the value is all that is left to
+     * send. With an If-Match header the cell is only written if the
+     * timesheet is still at that version. Resumes with 204 and the new
+     * version as ETag on success, so that autosaving clients can chain
+     * edits; 400 for an invalid day or charge, 404 if the row does not
+     * exist, 412 if the timesheet changed since ifMatch.
+     *
+     * @param async suspended response
+     * @param id of timesheet
+     * @param projectId of the row
+     * @param workPackageId of the row
+     * @param day day number, 0 = Saturday .. 6 = Friday
+     * @param ifMatch ETag the edit is based on, or null
+     * @param decihours hours * 10 charged for that day, 0 .. 240
+     */
+    @Secured({ Permission.ADMIN, Permission.USER })
+    @PUT
+    @Path("{id}/{projectId}/{workPackageId}/days/{day}")
+    @Consumes("application/json")
+    public void setDayHours(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id,
+            @PathParam("projectId") int projectId,
+            @PathParam("workPackageId") String workPackageId,
+            @PathParam("day") int day,
+            @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+            Integer decihours) {
+        final Employee caller = DaoExecutor.detach(authEmployee);
+        daoExecutor.submitWrite(async, "rows.day", () -> {
+            Response res = checkAuth(caller, id);
+            if (res != null) throw new WebApplicationException(
+                    (String) res.getEntity(), res.getStatus());
+            if (decihours == null) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(
+                        "Missing decihours").build();
+            }
+            Integer version;
+            try {
+                Integer expectedVersion = null;
+                if (ifMatch != null) {
+                    expectedVersion = tsManager.getVersion(id);
+                    Response.ResponseBuilder failed = TimesheetResource
+                            .evaluateIfMatch(ifMatch, expectedVersion);
+                    if (failed != null) {
+                        return failed.build();
+                    }
+                }
+                version = tsRowManager.setDayHours(id, projectId,
+                        workPackageId, day, decihours, expectedVersion);
+                if (version == null) {
+                    return Response.status(Response.Status.NOT_FOUND).entity(
+                            "Could not find timesheet row").build();
+                }
+            } catch (final StaleTimesheetException e) {
+                return Response.status(Response.Status.PRECONDITION_FAILED)
+                        .entity(e.getMessage()).build();
+            } catch (final IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(
+                        e.getMessage()).build();
+            } catch (final Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
+            }
+            return Response.noContent()
+                    .tag(TimesheetResource.versionTag(version, false)).build();
+        });
+    }
+
     /**
      * Adds TimesheetRow object to a timesheet object in the database
      *
-     * @param timesheetId specifies timesheet to add rows to
+     * @param async suspended response, resumed with 201
+     * @param id specifies timesheet to add rows to
      * @param rows specifies rows to be added
      */
     @Secured({ Permission.ADMIN, Permission.USER })
     @POST
     @Path("{id}")
     @Consumes("application/json")
-    public Response addRow(@PathParam("id") Integer id,
-            List<TimesheetRow> rows) {
-        Response res = checkAuth(id);
-        if (res != null) throw new WebApplicationException((String) res.getEntity(),
-                res.getStatus());
-        try {
-            Timesheet timesheet = tsManager.find(id);
-            if (timesheet == null) {
-                return Response.status(Response.Status.NOT_FOUND).entity("Could "
-                        + "not find timesheet via provided ID").build();
+    public void addRow(@Suspended AsyncResponse async,
+            @PathParam("id") Integer id, List<TimesheetRow> rows) {
+        final Employee caller = DaoExecutor.detach(authEmployee);
+        daoExecutor.submitWrite(async, "rows.add", () -> {
+            Response res = checkAuth(caller, id);
+            if (res != null) throw new WebApplicationException(
+                    (String) res.getEntity(), res.getStatus());
+            try {
+                if (tsRowManager.countRows(id) == Timesheet.DAYS_IN_WEEK) {
+                    return Response.status(Response.Status.UNSUPPORTED_MEDIA_TYPE)
+                            .entity("Cannot add more than 7 rows to a timesheet").build();
+                }
+                if (!tsRowManager.addRow(id, rows)) {
+                    return Response.status(Response.Status.CONFLICT).entity(
+                            "A timesheet row with same ProjectID and "
+                            + "WorkPackageID exists").build();
+                }
+            } catch (final Exception e) {
+                e.printStackTrace();
+                return Response.serverError().entity(e).build();
             }
-            if (timesheet.getDetails().size() == Timesheet.DAYS_IN_WEEK) {
-                return Response.status(Response.Status.UNSUPPORTED_MEDIA_TYPE)
-                        .entity("Cannot add more than 7 rows to a timesheet").build();
-            }
-            if (timesheet.getEmployee().getEmployeeNumber() !=
-                    authEmployee.getEmployeeNumber()) {
-                return Response.status(Response.Status.UNAUTHORIZED).entity(
-                        "Cannot edit another employee's timesheet").build();
-            }
-            tsRowManager.addRow(id, rows);
-        } catch (final Exception e) {
-            e.printStackTrace();
-            return Response.serverError().entity(e).build();
-        }
-        return Response.created(URI.create("/rows/" + id)).build();
+            return Response.created(URI.create("/rows/" + id)).build();
+        });
     }
 
     /**
-     * Checks authentication of user
+     * Checks authentication of user with a primary key lookup of the
+     * timesheet's owner, without loading the timesheet
+     * @param authEmployee to be checked
      * @param id of timesheet
      * @return response
      */
-    private Response checkAuth(int id) {
-        Timesheet ts = tsManager.find(id);
-        if (ts == null) throw new WebApplicationException(
+    private Response checkAuth(Employee authEmployee, int id) {
+        Integer owner;
+        try {
+            owner = tsManager.getOwnerNumber(id);
+        } catch (final SQLException e) {
+            e.printStackTrace();
+            throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        if (owner == null) throw new WebApplicationException(
                 "Could not find timesheet", Response.Status.NOT_FOUND);
-        if (ts.getEmployee().getEmployeeNumber() !=
-                authEmployee.getEmployeeNumber())
+        if (owner != authEmployee.getEmployeeNumber())
             return Response.status(Response.Status.UNAUTHORIZED).entity(
                     "Cannot access another user's timesheet").build();
         return null;
@@ -61,6 +61,9 @@ public class Timesheet implements java.io.Serializable {
     /** Primary key identifier. */
     private int timesheetId;
 
+    /** Version of the stored timesheet, incremented on every write. */
+    private int version;
+
     /**
      * Constructor for Timesheet.
      * Initialize a Timesheet with no rows, no employee and
@@ -281,12 +284,7 @@ public class Timesheet implements java.io.Serializable {
      * @return The timesheet's total hours.
      */
     public BigDecimal getTotalHours() {
-        BigDecimal timesheetHours = BigDecimal.ZERO;
-        for (TimesheetRow row : details) {
-            BigDecimal rowHours = row.getSum();
-            timesheetHours = timesheetHours.add(rowHours);
-        }
-        return timesheetHours;
+        return BigDecimal.valueOf(getTotalDecihours(), 1);
     }
 
     /**
@@ -303,36 +301,56 @@ public class Timesheet implements java.io.Serializable {
     }
 
     /**
-     * Calculates the daily total hours.
+     * Calculates the total decihours charged on one day, without allocating.
+     * Rows are edited in place, so the total is summed on each call.
+     *
+     * @param d the day number (0 = Saturday .. 6 = Friday)
+     * @return total decihours for that day
+     */
+    public int getDailyDecihour(int d) {
+        int sum = 0;
+        for (TimesheetRow row : details) {
+            sum += row.getDecihour(d);
+        }
+        return sum;
+    }
+
+    /**
+     * Calculates the total hours charged on one day, for the daily totals
+     * row of the timesheet table.
+     *
+     * @param d the day number (0 = Saturday .. 6 = Friday)
+     * @return total hours for that day
+     */
+    public BigDecimal getDailyHour(int d) {
+        return TimesheetRow.toBigDecimalHour(getDailyDecihour(d));
+    }
+
+    /**
+     * Calculates the daily total hours. Allocates a new array; use
+     * getDailyHour(d) where one day is needed.
      *
      * @return array of total hours for each day of week for timesheet.
      */
     public float[] getDailyHours() {
-        int[] deciSums = new int[DAYS_IN_WEEK];
         float[] sums = new float[DAYS_IN_WEEK];
-        for (TimesheetRow day : details) {
-            int[] hours = day.getDecihours();
-            for (int i = 0; i < DAYS_IN_WEEK; i++) {
-                deciSums[i] += hours[i];
-            }
-        }
         for (int i = 0; i < DAYS_IN_WEEK; i++) {
-            sums[i] = deciSums[i] / TimesheetRow.BASE10;
+            sums[i] = getDailyDecihour(i) / TimesheetRow.BASE10;
         }
         return sums;
     }
 
     /**
-     * Calculates the daily total decihours.
+     * Calculates the daily total decihours. Allocates a new array; use
+     * getDailyDecihour(d) where one day is needed.
      *
      * @return array of total hours for each day of week for timesheet.
      */
     public int[] getDailyDecihours() {
         int[] deciSums = new int[DAYS_IN_WEEK];
         for (TimesheetRow day : details) {
-            int[] hours = day.getDecihours();
             for (int i = 0; i < DAYS_IN_WEEK; i++) {
-                deciSums[i] += hours[i];
+                deciSums[i] += day.getDecihour(i);
             }
         }
         return deciSums;
@@ -396,4 +414,20 @@ public class Timesheet implements java.io.Serializable {
         this.timesheetId = timesheetId;
     }
 
+    /**
+     * Gets the version the timesheet was loaded at
+     * @return version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version the timesheet was loaded at
+     * @param version version to set
+     */
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
 }
@@ -1,6 +1,7 @@
 package ca.bcit.infosys.timesheet;
 
 import java.io.Serializable;
+import java.sql.SQLException;
 import java.util.List;
 
 import ca.bcit.infosys.employee.Employee;
@@ -38,6 +39,7 @@ public interface TimesheetCollection extends Serializable {
      * Adds timesheet to the database.
      * 
      * @param timesheet The timesheet to be added.
+     * @throws SQLException if the timesheet could not be stored.
      */
-    void addTimesheet(Timesheet timesheet);
+    void addTimesheet(Timesheet timesheet) throws SQLException;
 }
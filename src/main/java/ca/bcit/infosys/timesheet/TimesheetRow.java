@@ -1,10 +1,15 @@
 package ca.bcit.infosys.timesheet;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Arrays;
 
+import javax.json.bind.annotation.JsonbTransient;
+
 /**
  * A class representing a single row of a Timesheet.
+ * Hours are stored as packed decihours; the BigDecimal hours used by JSF
+ * and the JSON API are views over them.
  *
  * @author Bruce Link
  * @version 2.0
@@ -42,7 +47,7 @@ public class TimesheetRow implements java.io.Serializable {
     public static final int LAST_DAY = FRI;
 
     /** Version number. */
-    private static final long serialVersionUID = 4L;
+    private static final long serialVersionUID = 5L;
 
     /** mask for packing, unpacking hours. */
     private static final long[] MASK = {0xFFL, 
@@ -71,6 +76,15 @@ public class TimesheetRow implements java.io.Serializable {
     /** number of bits in a byte. */
     private static final int BITS_PER_BYTE = 8;
 
+    /** Shared BigDecimal hours for every valid decihour charge. */
+    private static final BigDecimal[] HOURS = new BigDecimal[DECI_MAX + 1];
+
+    static {
+        for (int i = 0; i < HOURS.length; i++) {
+            HOURS[i] = BigDecimal.valueOf(i, 1);
+        }
+    }
+
     /** The projectId. */
     private int projectId;
     
@@ -88,10 +102,11 @@ public class TimesheetRow implements java.io.Serializable {
     /** Any notes added to the timesheet row. */
     private String notes;
 
-    /**
-     * Holds the total hours in the week. index 0 is Saturday, index 1 is Sunday, etc.
-     */
-    private BigDecimal[] totalWeekHours = new BigDecimal[Timesheet.DAYS_IN_WEEK];
+    /** Sum of packedHours in decihours, kept in step with packedHours. */
+    private int deciSum;
+
+    /** BigDecimal view of deciSum, built on first use after a change. */
+    private transient BigDecimal sum;
     
     /** create empty timesheetRow to be modified later.*/
     public TimesheetRow() {
@@ -144,6 +159,32 @@ public class TimesheetRow implements java.io.Serializable {
     public static float toHour(int decihour) {
         return decihour / BASE10;
     }
+
+    /**
+     * convert hour to decihour.  hour rounded half up to one fractional
+     * decimal place.
+     * @param hour as BigDecimal, null is no charge
+     * @return equivalent number of decihours as int
+     */
+    public static int toDecihour(BigDecimal hour) {
+        if (hour == null) {
+            return 0;
+        }
+        return hour.movePointRight(1).setScale(0, RoundingMode.HALF_UP)
+                .intValueExact();
+    }
+
+    /**
+     * convert decihour to hour.  Valid charges share cached instances.
+     * @param decihour as int
+     * @return equivalent number of hours as BigDecimal
+     */
+    public static BigDecimal toBigDecimalHour(int decihour) {
+        if (decihour >= 0 && decihour < HOURS.length) {
+            return HOURS[decihour];
+        }
+        return BigDecimal.valueOf(decihour, 1);
+    }
     
 
     /**
@@ -196,6 +237,7 @@ public class TimesheetRow implements java.io.Serializable {
     public void setPackedHours(final long packedHours) {
         checkHoursForWeek(packedHours);
         this.packedHours = packedHours;
+        hoursChanged();
     }
 
     /**
@@ -238,18 +280,31 @@ public class TimesheetRow implements java.io.Serializable {
     
     /**
      * Gets the total hours in the week.
-     * @return The total hours in the week.
+     * @return The hours of each day, index 0 is Saturday, index 1 is Sunday,
+     *      etc.
      */
     public BigDecimal[] getTotalWeekHours() {
-        return totalWeekHours;
+        BigDecimal[] weekHours = new BigDecimal[Timesheet.DAYS_IN_WEEK];
+        for (int i = FIRST_DAY; i <= LAST_DAY; i++) {
+            weekHours[i] = toBigDecimalHour(getDecihour(i));
+        }
+        return weekHours;
     }
     
     /**
      * Sets the total hours in the week
-     * @param weekHours The total hours in the week.
+     * @param weekHours The hours of each day, Saturday first. Missing or null
+     *      days are no charge.
+     * @throws IllegalArgumentException if a charge is < 0 or > 24
      */
     public void setTotalWeekHours(BigDecimal[] weekHours) {
-        totalWeekHours = weekHours;
+        int[] charges = new int[Timesheet.DAYS_IN_WEEK];
+        if (weekHours != null) {
+            for (int i = FIRST_DAY; i <= LAST_DAY && i < weekHours.length; i++) {
+                charges[i] = toDecihour(weekHours[i]);
+            }
+        }
+        setDecihours(charges);
     }
     
     /**
@@ -257,13 +312,10 @@ public class TimesheetRow implements java.io.Serializable {
      * @return The total hours in a week.
      */
     public BigDecimal getSum() {
-        BigDecimal weekHours = BigDecimal.ZERO;
-        for (BigDecimal dayHours : totalWeekHours) {
-            if (dayHours != null) {
-                weekHours = weekHours.add(dayHours);
-            }
+        if (sum == null) {
+            sum = BigDecimal.valueOf(deciSum, 1);
         }
-        return weekHours;
+        return sum;
     }
     
     /**
@@ -271,12 +323,7 @@ public class TimesheetRow implements java.io.Serializable {
      * @return total hours in units of decihours
      */
     public int getDeciSum() {
-        int[] charges = getDecihours();
-        int sum = 0;
-        for (int charge: charges) {
-            sum += charge;
-        }
-        return sum;
+        return deciSum;
     }
     
     /**
@@ -308,6 +355,7 @@ public class TimesheetRow implements java.io.Serializable {
         }
         packedHours = packedHours & UMASK[d]
                 | (long) charge << (d * BITS_PER_BYTE);
+        hoursChanged();
     }
     
     /**
@@ -342,6 +390,7 @@ public class TimesheetRow implements java.io.Serializable {
             result = result * BYTE_BASE + toDecihour(charges[i]);
         }
         packedHours = result;
+        hoursChanged();
     }
     
     /**
@@ -376,8 +425,147 @@ public class TimesheetRow implements java.io.Serializable {
             result = result * BYTE_BASE + charges[i];
         }
         packedHours = result;
+        hoursChanged();
     }
     
+    /**
+     * Gets the hours charged on Saturday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getSat() {
+        return toBigDecimalHour(getDecihour(SAT));
+    }
+
+    /**
+     * Sets the hours charged on Saturday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setSat(BigDecimal hours) {
+        setDecihour(SAT, toDecihour(hours));
+    }
+
+    /**
+     * Gets the hours charged on Sunday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getSun() {
+        return toBigDecimalHour(getDecihour(SUN));
+    }
+
+    /**
+     * Sets the hours charged on Sunday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setSun(BigDecimal hours) {
+        setDecihour(SUN, toDecihour(hours));
+    }
+
+    /**
+     * Gets the hours charged on Monday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getMon() {
+        return toBigDecimalHour(getDecihour(MON));
+    }
+
+    /**
+     * Sets the hours charged on Monday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setMon(BigDecimal hours) {
+        setDecihour(MON, toDecihour(hours));
+    }
+
+    /**
+     * Gets the hours charged on Tuesday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getTue() {
+        return toBigDecimalHour(getDecihour(TUE));
+    }
+
+    /**
+     * Sets the hours charged on Tuesday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setTue(BigDecimal hours) {
+        setDecihour(TUE, toDecihour(hours));
+    }
+
+    /**
+     * Gets the hours charged on Wednesday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getWed() {
+        return toBigDecimalHour(getDecihour(WED));
+    }
+
+    /**
+     * Sets the hours charged on Wednesday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setWed(BigDecimal hours) {
+        setDecihour(WED, toDecihour(hours));
+    }
+
+    /**
+     * Gets the hours charged on Thursday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getThu() {
+        return toBigDecimalHour(getDecihour(THU));
+    }
+
+    /**
+     * Sets the hours charged on Thursday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setThu(BigDecimal hours) {
+        setDecihour(THU, toDecihour(hours));
+    }
+
+    /**
+     * Gets the hours charged on Friday, for JSF input fields.
+     * @return hours as BigDecimal
+     */
+    @JsonbTransient
+    public BigDecimal getFri() {
+        return toBigDecimalHour(getDecihour(FRI));
+    }
+
+    /**
+     * Sets the hours charged on Friday, for JSF input fields.
+     * @param hours charge, rounded to one decimal; null is no charge
+     */
+    @JsonbTransient
+    public void setFri(BigDecimal hours) {
+        setDecihour(FRI, toDecihour(hours));
+    }
+
+    /* recompute the cached totals after packedHours changed */
+    private void hoursChanged() {
+        int total = 0;
+        long check = packedHours;
+        for (int i = FIRST_DAY; i <= LAST_DAY; i++) {
+            total += (int) (check % BYTE_BASE);
+            check /= BYTE_BASE;
+        }
+        deciSum = total;
+        sum = null;
+    }
+
     /* throw IllegalArgumentException if an hour is out of range */
     private void checkHoursForWeek(final long packedDecihours) {
         if (packedDecihours < 0) {
@@ -0,0 +1,16 @@
+-- Adds the version of the employee directory, served as the ETag of
+-- GET /employees. Every insert, update or delete of Employees increments it
+-- in the same transaction; anything that changes Employees directly in the
+-- database must increment it too.
+-- Run once against an existing timesheet_system_asn3 database:
+--   mysql timesheet_system_asn3 -u admin -p < employee_directory_version_migration.sql
+
+USE timesheet_system_asn3;
+
+CREATE TABLE EmployeeDirectory(
+    id TINYINT NOT NULL,
+    version BIGINT NOT NULL,
+    CONSTRAINT PKEmployeeDirectory PRIMARY KEY (id)
+);
+
+INSERT INTO EmployeeDirectory VALUES (1, 0);
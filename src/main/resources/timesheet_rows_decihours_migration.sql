@@ -0,0 +1,27 @@
+-- One-shot migration of TimesheetRows from the comma separated
+-- totalWeekHours VARCHAR to seven decihour columns (Saturday .. Friday).
+-- Run once against an existing timesheet_system_asn3 database:
+--   mysql timesheet_system_asn3 -u admin -p < timesheet_rows_decihours_migration.sql
+-- MySQL commits DDL implicitly, so take a backup before running.
+
+USE timesheet_system_asn3;
+
+ALTER TABLE TimesheetRows
+    ADD COLUMN sat SMALLINT NOT NULL DEFAULT 0 AFTER workPackageId,
+    ADD COLUMN sun SMALLINT NOT NULL DEFAULT 0 AFTER sat,
+    ADD COLUMN mon SMALLINT NOT NULL DEFAULT 0 AFTER sun,
+    ADD COLUMN tue SMALLINT NOT NULL DEFAULT 0 AFTER mon,
+    ADD COLUMN wed SMALLINT NOT NULL DEFAULT 0 AFTER tue,
+    ADD COLUMN thu SMALLINT NOT NULL DEFAULT 0 AFTER wed,
+    ADD COLUMN fri SMALLINT NOT NULL DEFAULT 0 AFTER thu;
+
+UPDATE TimesheetRows SET
+    sat = ROUND(SUBSTRING_INDEX(totalWeekHours, ',', 1) * 10),
+    sun = ROUND(SUBSTRING_INDEX(SUBSTRING_INDEX(totalWeekHours, ',', 2), ',', -1) * 10),
+    mon = ROUND(SUBSTRING_INDEX(SUBSTRING_INDEX(totalWeekHours, ',', 3), ',', -1) * 10),
+    tue = ROUND(SUBSTRING_INDEX(SUBSTRING_INDEX(totalWeekHours, ',', 4), ',', -1) * 10),
+    wed = ROUND(SUBSTRING_INDEX(SUBSTRING_INDEX(totalWeekHours, ',', 5), ',', -1) * 10),
+    thu = ROUND(SUBSTRING_INDEX(SUBSTRING_INDEX(totalWeekHours, ',', 6), ',', -1) * 10),
+    fri = ROUND(SUBSTRING_INDEX(totalWeekHours, ',', -1) * 10);
+
+ALTER TABLE TimesheetRows DROP COLUMN totalWeekHours;
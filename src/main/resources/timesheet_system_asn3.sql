@@ -20,6 +20,15 @@ CREATE TABLE Employees(
 INSERT INTO Employees VALUES (1, "Benedict Halim", "bhalim", 1);
 INSERT INTO Employees VALUES (2, "Leon Wu", "lwu", 0);
 
+DROP TABLE IF EXISTS EmployeeDirectory;
+CREATE TABLE EmployeeDirectory(
+    id TINYINT NOT NULL,
+    version BIGINT NOT NULL,
+    CONSTRAINT PKEmployeeDirectory PRIMARY KEY (id)
+);
+
+INSERT INTO EmployeeDirectory VALUES (1, 0);
+
 DROP TABLE IF EXISTS Credentials;
 CREATE TABLE Credentials(
     employeeNumber INT(10) NOT NULL UNIQUE,
@@ -40,6 +49,7 @@ CREATE TABLE Timesheets(
     employeeNumber INT(10) NOT NULL,
     endDate DATE NOT NULL,
     timesheetId INT(10) NOT NULL UNIQUE AUTO_INCREMENT,
+    version INT(10) NOT NULL DEFAULT 0,
     CONSTRAINT PKTimesheet PRIMARY KEY (timesheetId),
     CONSTRAINT FKTimesheetEmployeeNumber FOREIGN KEY (employeeNumber)
         REFERENCES Employees (employeeNumber)
@@ -52,7 +62,13 @@ CREATE TABLE TimesheetRows(
 	timesheetId INT(10) NOT NULL,
     projectId INT(10) NOT NULL,
     workPackageId VARCHAR(10) NOT NULL,
-    totalWeekHours VARCHAR(50) NOT NULL,
+    sat SMALLINT NOT NULL DEFAULT 0,
+    sun SMALLINT NOT NULL DEFAULT 0,
+    mon SMALLINT NOT NULL DEFAULT 0,
+    tue SMALLINT NOT NULL DEFAULT 0,
+    wed SMALLINT NOT NULL DEFAULT 0,
+    thu SMALLINT NOT NULL DEFAULT 0,
+    fri SMALLINT NOT NULL DEFAULT 0,
     notes VARCHAR(50) NOT NULL,
     CONSTRAINT PKTimesheetRows PRIMARY KEY (timesheetId, projectId, workPackageId),
     CONSTRAINT FKTimesheetRowsTimesheetId FOREIGN KEY (TimesheetID)
@@ -61,16 +77,16 @@ CREATE TABLE TimesheetRows(
         ON DELETE CASCADE
 );
 
-INSERT INTO Timesheets VALUES (1, DATE'2021-11-12', 1);
-INSERT INTO Timesheets VALUES (1, DATE'2021-11-19', 2);
-INSERT INTO Timesheets VALUES (2, DATE'2021-11-12', 3);
-INSERT INTO Timesheets VALUES (2, DATE'2021-11-19', 4);
+INSERT INTO Timesheets VALUES (1, DATE'2021-11-12', 1, 0);
+INSERT INTO Timesheets VALUES (1, DATE'2021-11-19', 2, 0);
+INSERT INTO Timesheets VALUES (2, DATE'2021-11-12', 3, 0);
+INSERT INTO Timesheets VALUES (2, DATE'2021-11-19', 4, 0);
 
-INSERT INTO TimesheetRows VALUES (1, 21, "A87", "0,0,0.00,8,7,8,7", "");
-INSERT INTO TimesheetRows VALUES (1, 21, "A202", "1,2,7.5,4,5,6,7", "Sequence");
-INSERT INTO TimesheetRows VALUES (2, 56, "D777", "0,0,0,0,0,0,0", "None");
-INSERT INTO TimesheetRows VALUES (2, 303, "D777", "10,9.08,8.0,7.1,6,5,4", "");
-INSERT INTO TimesheetRows VALUES (3, 66, "A8711", "0,0,0.00,8,7,8,7", "");
-INSERT INTO TimesheetRows VALUES (3, 88, "A2022", "1,2,7.5,4,5,6,7", "Sequence");
-INSERT INTO TimesheetRows VALUES (4, 7, "D7737", "0,0,0,0,0,0,0", "None");
-INSERT INTO TimesheetRows VALUES (4, 224, "D7577", "10,9.08,8.0,7.1,6,5,4", "");
+INSERT INTO TimesheetRows VALUES (1, 21, "A87", 0, 0, 0, 80, 70, 80, 70, "");
+INSERT INTO TimesheetRows VALUES (1, 21, "A202", 10, 20, 75, 40, 50, 60, 70, "Sequence");
+INSERT INTO TimesheetRows VALUES (2, 56, "D777", 0, 0, 0, 0, 0, 0, 0, "None");
+INSERT INTO TimesheetRows VALUES (2, 303, "D777", 100, 91, 80, 71, 60, 50, 40, "");
+INSERT INTO TimesheetRows VALUES (3, 66, "A8711", 0, 0, 0, 80, 70, 80, 70, "");
+INSERT INTO TimesheetRows VALUES (3, 88, "A2022", 10, 20, 75, 40, 50, 60, 70, "Sequence");
+INSERT INTO TimesheetRows VALUES (4, 7, "D7737", 0, 0, 0, 0, 0, 0, 0, "None");
+INSERT INTO TimesheetRows VALUES (4, 224, "D7577", 100, 91, 80, 71, 60, 50, 40, "");
@@ -0,0 +1,10 @@
+-- Adds the optimistic concurrency version to Timesheets. Every write to a
+-- timesheet or its rows increments it; it is served as the ETag of
+-- GET /timesheets/{id} and checked against If-Match on writes.
+-- Run once against an existing timesheet_system_asn3 database:
+--   mysql timesheet_system_asn3 -u admin -p < timesheet_version_migration.sql
+
+USE timesheet_system_asn3;
+
+ALTER TABLE Timesheets
+    ADD COLUMN version INT(10) NOT NULL DEFAULT 0 AFTER timesheetId;
@@ -0,0 +1,187 @@
+package ca.bcit.infosys.authentication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.bcit.infosys.employee.Employee;
+
+/**
+ * Tests signing and verification of stateless tokens.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class TokenBuilderTest {
+
+    private static final String PASSWORD = "changeit";
+    private static final long NOW = 1_700_000_000L;
+
+    @TempDir
+    static File dir;
+
+    private static TokenKeyStore keys;
+    private static SecretKey k1;
+    private static SecretKey other;
+
+    private final TokenBuilder builder = new TokenBuilder();
+
+    @BeforeAll
+    static void createKeyStore() throws Exception {
+        final KeyGenerator generator = KeyGenerator.getInstance("HmacSHA256");
+        k1 = generator.generateKey();
+        other = generator.generateKey();
+        final KeyStore store = KeyStore.getInstance("JCEKS");
+        store.load(null, PASSWORD.toCharArray());
+        store.setEntry("k1", new KeyStore.SecretKeyEntry(k1),
+                new KeyStore.PasswordProtection(PASSWORD.toCharArray()));
+        final File file = new File(dir, "tokens.jceks");
+        try (OutputStream out = new FileOutputStream(file)) {
+            store.store(out, PASSWORD.toCharArray());
+        }
+        System.setProperty("timesheet.token.keystore", file.getPath());
+        System.setProperty("timesheet.token.keystore.password", PASSWORD);
+        System.setProperty("timesheet.token.key", "k1");
+        keys = new TokenKeyStore();
+    }
+
+    @AfterAll
+    static void clearProperties() {
+        System.clearProperty("timesheet.token.keystore");
+        System.clearProperty("timesheet.token.keystore.password");
+        System.clearProperty("timesheet.token.key");
+    }
+
+    private static Employee employee(boolean admin) {
+        return new Employee(7, "Jane Doe", "jdoe", admin);
+    }
+
+    @Test
+    void readsUnreadableKeyStoreOnce() {
+        System.setProperty("timesheet.token.keystore.password", "wrong");
+        final TokenKeyStore wrong = new TokenKeyStore();
+        System.setProperty("timesheet.token.keystore.password", PASSWORD);
+        final PrintStream err = System.err;
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(log, true));
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertNull(wrong.getKey("k1"));
+            }
+        } finally {
+            System.setErr(err);
+        }
+        final String[] lines = new String(log.toByteArray(),
+                StandardCharsets.UTF_8).split("\\R");
+        assertEquals(1, Arrays.stream(lines)
+                .filter(l -> l.startsWith("java.io.IOException")).count());
+    }
+
+    @Test
+    void verifiesWhatItSigned() throws Exception {
+        final String token = builder.sign("k1", k1, employee(true), NOW + 60);
+        assertTrue(builder.isSigned(token));
+        final Employee e = builder.verify(token, keys, NOW);
+        assertNotNull(e);
+        assertEquals(7, e.getEmployeeNumber());
+        assertEquals("Jane Doe", e.getEmployeeName());
+        assertEquals("jdoe", e.getUserName());
+        assertTrue(e.getIsAdmin());
+        assertEquals(Permission.ADMIN, e.getPermission());
+    }
+
+    @Test
+    void carriesUserRole() throws Exception {
+        final String token = builder.sign("k1", k1, employee(false), NOW + 60);
+        final Employee e = builder.verify(token, keys, NOW);
+        assertFalse(e.getIsAdmin());
+        assertEquals(Permission.USER, e.getPermission());
+    }
+
+    @Test
+    void keepsNameOnOneLine() throws Exception {
+        final Employee employee = new Employee(7, "Jane\nDoe", "jdoe", false);
+        final String token = builder.sign("k1", k1, employee, NOW + 60);
+        final Employee e = builder.verify(token, keys, NOW);
+        assertEquals("Jane Doe", e.getEmployeeName());
+        assertEquals("jdoe", e.getUserName());
+    }
+
+    @Test
+    void rejectsExpiredToken() throws Exception {
+        final String token = builder.sign("k1", k1, employee(false), NOW - 1);
+        assertNull(builder.verify(token, keys, NOW));
+    }
+
+    @Test
+    void acceptsTokenUntilItsExpirySecond() throws Exception {
+        final String token = builder.sign("k1", k1, employee(false), NOW);
+        assertNotNull(builder.verify(token, keys, NOW));
+    }
+
+    @Test
+    void rejectsTamperedClaims() throws Exception {
+        final String token = builder.sign("k1", k1, employee(false), NOW + 60);
+        final String signature = token.substring(token.indexOf('.'));
+        final String claims = "k1\n7\nADMIN\n" + (NOW + 60) + "\nJane Doe\njdoe";
+        final String forged = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+                + signature;
+        assertNull(builder.verify(forged, keys, NOW));
+    }
+
+    @Test
+    void rejectsTamperedSignature() throws Exception {
+        final String token = builder.sign("k1", k1, employee(false), NOW + 60);
+        // a character inside the signature, so no padding bits are involved
+        final int i = token.length() - 10;
+        final String forged = token.substring(0, i)
+                + (token.charAt(i) == 'A' ? 'B' : 'A') + token.substring(i + 1);
+        assertNull(builder.verify(forged, keys, NOW));
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherKey() throws Exception {
+        final String token = builder.sign("k1", other, employee(false), NOW + 60);
+        assertNull(builder.verify(token, keys, NOW));
+    }
+
+    @Test
+    void rejectsUnknownKeyId() throws Exception {
+        final String token = builder.sign("k2", k1, employee(false), NOW + 60);
+        assertNull(builder.verify(token, keys, NOW));
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertNull(builder.verify("not-a-token", keys, NOW));
+        assertNull(builder.verify("!!!.???", keys, NOW));
+        assertNull(builder.verify(".abc", keys, NOW));
+        assertNull(builder.verify("YWJj.YWJj", keys, NOW));
+    }
+
+    @Test
+    void hexTokensAreNotSigned() {
+        assertFalse(builder.isSigned("0a1b2c3d"));
+    }
+}
@@ -0,0 +1,94 @@
+package ca.bcit.infosys.authentication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import ca.bcit.infosys.employee.Credentials;
+
+/**
+ * Tests that the token cache never serves credentials older than the last
+ * invalidation, that invalidation drops only that employee's tokens, and
+ * that it evicts the least recently used token.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class TokenCacheTest {
+
+    private final TokenCache cache = new TokenCache();
+
+    private static Credentials credentials(int employeeNumber) {
+        return new Credentials(employeeNumber, "user" + employeeNumber, "pw");
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        assertNull(cache.get("AB12"));
+        cache.put("AB12", credentials(1), cache.stamp());
+        assertNotNull(cache.get("ab12"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void dropsLoadThatStartedBeforeInvalidation() {
+        final long stamp = cache.stamp();
+        // the password is changed while the lookup above is in flight
+        cache.invalidate(1);
+        cache.put("ab12", credentials(1), stamp);
+        assertNull(cache.get("ab12"));
+    }
+
+    @Test
+    void invalidatesOnlyThatEmployee() {
+        cache.put("aa", credentials(1), cache.stamp());
+        cache.put("bb", credentials(2), cache.stamp());
+        cache.invalidate(1);
+        assertNull(cache.get("aa"));
+        assertNotNull(cache.get("bb"));
+    }
+
+    @Test
+    void invalidatesEveryTokenOfThatEmployee() {
+        for (int i = 0; i < 100; i++) {
+            cache.put(Integer.toHexString(i), credentials(i % 2), cache.stamp());
+        }
+        cache.invalidate(1);
+        assertEquals(50, cache.getSize());
+        assertNull(cache.get("1"));
+        assertNotNull(cache.get("2"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        final TokenCache single = new TokenCache(4, 1);
+        for (int i = 0; i < 4; i++) {
+            single.put(Integer.toHexString(i), credentials(i), single.stamp());
+        }
+        // touch the oldest token so that the second oldest is evicted
+        assertNotNull(single.get("0"));
+        single.put("ff", credentials(1), single.stamp());
+        assertEquals(4, single.getSize());
+        assertEquals(1, single.getEvictions());
+        assertNotNull(single.get("0"));
+        assertNull(single.get("1"));
+        // the evicted token no longer counts as one of employee 1's
+        single.invalidate(1);
+        assertNull(single.get("ff"));
+        assertEquals(3, single.getSize());
+    }
+
+    @Test
+    void staysWithinBound() {
+        final int max = 10000;
+        for (int i = 0; i < 2 * max; i++) {
+            cache.put(Integer.toHexString(i), credentials(i), cache.stamp());
+        }
+        assertTrue(cache.getSize() <= max);
+        assertEquals(2 * max - cache.getSize(), cache.getEvictions());
+    }
+}
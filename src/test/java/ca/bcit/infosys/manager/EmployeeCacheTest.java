@@ -0,0 +1,69 @@
+package ca.bcit.infosys.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import ca.bcit.infosys.employee.Employee;
+
+/**
+ * Tests that the employee cache never serves a row older than the last
+ * invalidation.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class EmployeeCacheTest {
+
+    private final EmployeeCache cache = new EmployeeCache();
+
+    @Test
+    void servesCachedCopies() {
+        cache.put(new Employee(2, "Leon Wu", "lwu", false), cache.stamp());
+        final Employee employee = cache.getByUserName("lwu");
+        assertNotNull(employee);
+        employee.setEmployeeName("changed");
+        assertEquals("Leon Wu", cache.getByNumber(2).getEmployeeName());
+    }
+
+    @Test
+    void dropsLoadThatStartedBeforeInvalidation() {
+        final long stamp = cache.stamp();
+        final Employee stale = new Employee(2, "Leon Wu", "lwu", false);
+        // the employee is edited while the load above is in flight
+        cache.invalidate(2);
+        cache.put(stale, stamp);
+        assertNull(cache.getByNumber(2));
+        assertNull(cache.getByUserName("lwu"));
+    }
+
+    @Test
+    void acceptsLoadThatStartedAfterInvalidation() {
+        cache.invalidate(2);
+        cache.put(new Employee(2, "Leon Wu", "lwu", false), cache.stamp());
+        assertNotNull(cache.getByNumber(2));
+    }
+
+    @Test
+    void forgetsOldUserNameOnRename() {
+        cache.put(new Employee(2, "Leon Wu", "lwu", false), cache.stamp());
+        cache.invalidate(2);
+        cache.put(new Employee(2, "Leon Wu", "leon", false), cache.stamp());
+        assertNull(cache.getByUserName("lwu"));
+        assertEquals(2, cache.getByUserName("leon").getEmployeeNumber());
+    }
+
+    @Test
+    void swappedUserNamesResolveToTheirNewOwners() {
+        cache.put(new Employee(1, "A", "alpha", false), cache.stamp());
+        cache.put(new Employee(2, "B", "beta", false), cache.stamp());
+        cache.invalidate(1);
+        cache.invalidate(2);
+        cache.put(new Employee(1, "A", "beta", false), cache.stamp());
+        cache.put(new Employee(2, "B", "alpha", false), cache.stamp());
+        assertEquals(1, cache.getByUserName("beta").getEmployeeNumber());
+        assertEquals(2, cache.getByUserName("alpha").getEmployeeNumber());
+    }
+}
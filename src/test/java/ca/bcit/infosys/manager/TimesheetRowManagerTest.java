@@ -0,0 +1,279 @@
+package ca.bcit.infosys.manager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import ca.bcit.infosys.timesheet.TimesheetRow;
+
+/**
+ * Tests that decihours written by TimesheetRowManager read back unchanged,
+ * using the manager's own SQL column lists against a recording connection,
+ * that row keys compare work packages as MySQL does, and that a write
+ * which changes nothing leaves the timesheet's version.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class TimesheetRowManagerTest {
+
+    private final TimesheetRowManager manager = new TimesheetRowManager();
+
+    /** Column values of each row added to a batch, by column name. */
+    private final List<Map<String, Object>> written =
+            new ArrayList<Map<String, Object>>();
+
+    /**
+     * Gets a connection whose statements record their batches in written.
+     * @return recording connection
+     */
+    private Connection recordingConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                if ("prepareStatement".equals(method.getName())) {
+                    return recordingStatement(columns((String) args[0]));
+                }
+                return null;
+            });
+    }
+
+    private PreparedStatement recordingStatement(final List<String> columns) {
+        final Map<String, Object> current = new HashMap<String, Object>();
+        return (PreparedStatement) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "setInt":
+                case "setString":
+                    current.put(columns.get((Integer) args[0] - 1), args[1]);
+                    return null;
+                case "addBatch":
+                    written.add(new HashMap<String, Object>(current));
+                    return null;
+                case "clearParameters":
+                    current.clear();
+                    return null;
+                case "executeBatch":
+                    final int[] counts = new int[written.size()];
+                    Arrays.fill(counts, 1);
+                    return counts;
+                default:
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Gets a result set positioned on one stored row.
+     * @param row column values by name
+     * @return result set over row
+     */
+    private static ResultSet resultSet(final Map<String, Object> row) {
+        return (ResultSet) Proxy.newProxyInstance(
+            TimesheetRowManagerTest.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                final Object value = row.get(args[0]);
+                switch (method.getName()) {
+                case "getInt":
+                    return value == null ? 0 : value;
+                case "getString":
+                    return value;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    /**
+     * Gets the column names of an INSERT statement in parameter order.
+     * @param insert INSERT statement
+     * @return column names
+     */
+    private static List<String> columns(String insert) {
+        final String list = insert.substring(insert.indexOf('(') + 1,
+                insert.indexOf(')'));
+        final List<String> names = new ArrayList<String>();
+        for (String name : list.split(",")) {
+            names.add(name.trim());
+        }
+        return names;
+    }
+
+    /**
+     * Gets a data source whose queries return the given stored rows.
+     * @param rows column values of each stored row, by name
+     * @return data source over rows
+     */
+    private static DataSource storedRows(final List<Map<String, Object>> rows) {
+        final ClassLoader loader = TimesheetRowManagerTest.class.getClassLoader();
+        final PreparedStatement query = (PreparedStatement) Proxy.newProxyInstance(
+            loader, new Class<?>[] {PreparedStatement.class},
+            (proxy, method, args) -> {
+                if (!"executeQuery".equals(method.getName())) {
+                    return null;
+                }
+                final Iterator<Map<String, Object>> it = rows.iterator();
+                final Map<String, Object> current = new HashMap<String, Object>();
+                return Proxy.newProxyInstance(loader, new Class<?>[] {ResultSet.class},
+                    (rs, m, a) -> {
+                        if ("next".equals(m.getName())) {
+                            current.clear();
+                            if (!it.hasNext()) {
+                                return false;
+                            }
+                            current.putAll(it.next());
+                            return true;
+                        }
+                        final Object value = current.get(a[0]);
+                        return "getInt".equals(m.getName()) && value == null
+                                ? 0 : value;
+                    });
+            });
+        final Connection connection = (Connection) Proxy.newProxyInstance(loader,
+            new Class<?>[] {Connection.class},
+            (proxy, method, args) -> "prepareStatement".equals(method.getName())
+                    ? query : null);
+        return (DataSource) Proxy.newProxyInstance(loader,
+            new Class<?>[] {DataSource.class},
+            (proxy, method, args) -> "getConnection".equals(method.getName())
+                    ? connection : null);
+    }
+
+    private List<TimesheetRow> roundTrip(String statement,
+            TimesheetRow... rows) throws SQLException {
+        TimesheetRowManager.writeRows(recordingConnection(), statement, 42,
+                Arrays.asList(rows));
+        final List<TimesheetRow> read = new ArrayList<TimesheetRow>();
+        for (Map<String, Object> row : written) {
+            assertEquals(42, row.get("timesheetId"));
+            read.add(manager.mapRow(resultSet(row)));
+        }
+        return read;
+    }
+
+    @Test
+    void batchKeysIgnoreWorkPackageCase() {
+        assertFalse(manager.checkPK(42, Arrays.asList(
+                new TimesheetRow(7, "wp1"), new TimesheetRow(7, "WP1"))));
+    }
+
+    @Test
+    void storedKeysIgnoreWorkPackageCase() throws Exception {
+        final Map<String, Object> stored = new HashMap<String, Object>();
+        stored.put("projectId", 7);
+        stored.put("workPackageId", "WP1");
+        inject("dataSource", storedRows(Arrays.asList(stored)));
+        assertFalse(manager.checkPK(42, Arrays.asList(new TimesheetRow(7, "wp1"))));
+        assertTrue(manager.checkPK(42, Arrays.asList(new TimesheetRow(7, "wp2"))));
+    }
+
+    /**
+     * Gets a data source on which the timesheet is at version 3, its row
+     * (7, WP1) exists and no update matches, and which records every
+     * statement it prepares.
+     * @param prepared receives the SQL of each prepared statement
+     * @return data source whose writes change nothing
+     */
+    private static DataSource unchangedRow(final List<String> prepared) {
+        final ClassLoader loader = TimesheetRowManagerTest.class.getClassLoader();
+        final ResultSet version = (ResultSet) Proxy.newProxyInstance(loader,
+            new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "next":
+                    return true;
+                case "getInt":
+                    return 3;
+                default:
+                    return null;
+                }
+            });
+        final Connection connection = (Connection) Proxy.newProxyInstance(loader,
+            new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                if (!"prepareStatement".equals(method.getName())) {
+                    return null;
+                }
+                prepared.add((String) args[0]);
+                return Proxy.newProxyInstance(loader,
+                    new Class<?>[] {PreparedStatement.class}, (ps, m, a) -> {
+                        switch (m.getName()) {
+                        case "executeQuery":
+                            return version;
+                        case "executeUpdate":
+                            return 0;
+                        default:
+                            return null;
+                        }
+                    });
+            });
+        return (DataSource) Proxy.newProxyInstance(loader,
+            new Class<?>[] {DataSource.class},
+            (proxy, method, args) -> "getConnection".equals(method.getName())
+                    ? connection : null);
+    }
+
+    @Test
+    void unchangedDayKeepsVersion() throws Exception {
+        final List<String> prepared = new ArrayList<String>();
+        inject("dataSource", unchangedRow(prepared));
+        inject("identityMap", new IdentityMap());
+        assertEquals(Integer.valueOf(3),
+                manager.setDayHours(42, 7, "WP1", 0, 75, 3));
+        for (String sql : prepared) {
+            assertFalse(sql.startsWith("UPDATE Timesheets "), sql);
+        }
+    }
+
+    private void inject(String name, Object value) throws Exception {
+        final Field field = TimesheetRowManager.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(manager, value);
+    }
+
+    @Test
+    void everyDayReadsBackFromItsOwnColumn() throws SQLException {
+        final TimesheetRow row = new TimesheetRow(7, "WP1");
+        row.setNotes("notes");
+        row.setDecihours(new int[] {1, 2, 3, 4, 5, 6, 7});
+        final TimesheetRow read = roundTrip(TimesheetRowManager.INSERT_ROW, row)
+                .get(0);
+        assertEquals(7, read.getProjectId());
+        assertEquals("WP1", read.getWorkPackageId());
+        assertEquals("notes", read.getNotes());
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5, 6, 7}, read.getDecihours());
+        assertEquals(row.getPackedHours(), read.getPackedHours());
+        assertEquals(1, written.get(0).get("sat"));
+        assertEquals(7, written.get(0).get("fri"));
+    }
+
+    @Test
+    void boundsAndFractionsSurvive() throws SQLException {
+        final TimesheetRow full = new TimesheetRow(1, "A");
+        full.setDecihours(new int[] {240, 0, 240, 1, 239, 0, 240});
+        final TimesheetRow empty = new TimesheetRow(2, "B");
+        final List<TimesheetRow> read = roundTrip(
+                TimesheetRowManager.UPSERT_ROW, full, empty);
+        assertEquals(2, read.size());
+        assertArrayEquals(full.getDecihours(), read.get(0).getDecihours());
+        assertEquals(full.getSum(), read.get(0).getSum());
+        assertEquals(0L, read.get(1).getPackedHours());
+        assertEquals(0, read.get(1).getDeciSum());
+    }
+}
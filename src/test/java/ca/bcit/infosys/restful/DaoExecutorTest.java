@@ -0,0 +1,158 @@
+package ca.bcit.infosys.restful;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+/**
+ * Tests DaoExecutor with virtual threads: the connection bound, the queue
+ * bound, and that cancelled requests are not counted as completed. Run on
+ * JDK 21 with the jdk21 profile; skipped on older JDKs.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+class DaoExecutorTest {
+
+    private DaoExecutor executor;
+
+    /**
+     * A suspended request that records how it was resumed.
+     */
+    private static final class Request {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Object> resumed = new AtomicReference<Object>();
+        final AtomicReference<TimeoutHandler> onTimeout =
+                new AtomicReference<TimeoutHandler>();
+        final AsyncResponse async = (AsyncResponse) Proxy.newProxyInstance(
+                DaoExecutorTest.class.getClassLoader(),
+                new Class<?>[] {AsyncResponse.class}, (p, method, args) -> {
+                    switch (method.getName()) {
+                    case "resume":
+                        final boolean first = resumed.compareAndSet(null, args[0]);
+                        done.countDown();
+                        return first;
+                    case "isDone":
+                        return resumed.get() != null;
+                    case "setTimeoutHandler":
+                        onTimeout.set((TimeoutHandler) args[0]);
+                        return null;
+                    case "setTimeout":
+                        return true;
+                    default:
+                        return null;
+                    }
+                });
+
+        Object await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return resumed.get();
+        }
+    }
+
+    private void start(int connections, int queue) throws Exception {
+        System.setProperty("timesheet.dao.virtual", "true");
+        System.setProperty("timesheet.dao.connections", String.valueOf(connections));
+        System.setProperty("timesheet.dao.queue", String.valueOf(queue));
+        executor = new DaoExecutor();
+        final Field runner = DaoExecutor.class.getDeclaredField("contextRunner");
+        runner.setAccessible(true);
+        runner.set(executor, new RequestContextRunner());
+        executor.start();
+        assertTrue(executor.isVirtual());
+    }
+
+    @AfterEach
+    void stop() {
+        executor.stop();
+        System.clearProperty("timesheet.dao.virtual");
+        System.clearProperty("timesheet.dao.connections");
+        System.clearProperty("timesheet.dao.queue");
+    }
+
+    /**
+     * Waits until no request holds or waits for a connection.
+     */
+    private void awaitIdle() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getActiveCount() > 0 || executor.getQueueDepth() > 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void runsAtMostConnectionsAtOnce() throws Exception {
+        start(2, 10);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger most = new AtomicInteger();
+        final Request[] requests = new Request[6];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new Request();
+            executor.submit(requests[i].async, "test", () -> {
+                most.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                running.decrementAndGet();
+                return "ok";
+            });
+        }
+        for (Request request : requests) {
+            assertEquals("ok", request.await());
+        }
+        awaitIdle();
+        assertEquals(2, most.get());
+        assertEquals(6, executor.getCompletedCount());
+    }
+
+    @Test
+    void rejectsBeyondQueue() throws Exception {
+        start(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Request running = new Request();
+        final Request waiting = new Request();
+        final Request rejected = new Request();
+        executor.submitWrite(running.async, "test", () -> release.await(5, TimeUnit.SECONDS));
+        executor.submitWrite(waiting.async, "test", () -> "ok");
+        executor.submitWrite(rejected.async, "test", () -> "ok");
+        assertEquals(503, ((Response) rejected.await()).getStatus());
+        assertEquals(1, executor.getRejectedCount());
+        release.countDown();
+        assertEquals("ok", waiting.await());
+        awaitIdle();
+        assertEquals(2, executor.getCompletedCount());
+    }
+
+    @Test
+    void cancelledRequestIsNotCompleted() throws Exception {
+        start(1, 10);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Request running = new Request();
+        final Request cancelled = new Request();
+        executor.submit(running.async, "test", () -> release.await(5, TimeUnit.SECONDS));
+        executor.submit(cancelled.async, "test", () -> "ran");
+        // the second request times out while waiting for the connection
+        cancelled.onTimeout.get().handleTimeout(cancelled.async);
+        assertEquals(503, ((Response) cancelled.await()).getStatus());
+        release.countDown();
+        running.await();
+        awaitIdle();
+        assertEquals(1, executor.getCompletedCount());
+        assertEquals(1, executor.getTimedOutCount());
+    }
+}
@@ -0,0 +1,70 @@
+package ca.bcit.infosys.restful;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.specimpl.BuiltResponse;
+import org.junit.jupiter.api.Test;
+
+import ca.bcit.infosys.employee.Employee;
+import ca.bcit.infosys.timesheet.Timesheet;
+import ca.bcit.infosys.timesheet.TimesheetRow;
+
+/**
+ * Tests that the computed fields are written only for entities that the
+ * resource marked on the request thread, whatever thread writes them.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class DomainJsonWriterTest {
+
+    private final DomainJsonWriter writer = new DomainJsonWriter();
+
+    private static Timesheet timesheet() {
+        final Timesheet timesheet = new Timesheet(
+                new Employee(1, "Jane Doe", "jdoe", false),
+                LocalDate.of(2021, 11, 12), new ArrayList<TimesheetRow>());
+        timesheet.getDetails().add(new TimesheetRow(1, "WP1"));
+        return timesheet;
+    }
+
+    /**
+     * Writes the entity of a response with the annotations it carries, as
+     * the container does.
+     */
+    private String write(Response response) throws IOException {
+        final Annotation[] annotations =
+                ((BuiltResponse) response).getAnnotations();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(response.getEntity(), Timesheet.class, Timesheet.class,
+                annotations == null ? new Annotation[0] : annotations,
+                MediaType.APPLICATION_JSON_TYPE, null, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesStoredFieldsByDefault() throws IOException {
+        final String json = write(DomainJsonWriter.entity(Response.ok(),
+                timesheet(), false).build());
+        assertTrue(json.contains("\"timesheetId\""));
+        assertFalse(json.contains("\"totalHours\""));
+    }
+
+    @Test
+    void writesComputedFieldsWhenMarked() throws IOException {
+        final String json = write(DomainJsonWriter.entity(Response.ok(),
+                timesheet(), true).build());
+        assertTrue(json.contains("\"totalHours\""));
+    }
+}
@@ -0,0 +1,40 @@
+package ca.bcit.infosys.restful;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests If-Match and If-None-Match evaluation against timesheet version
+ * tags.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class PreconditionsTest {
+
+    private final EntityTag tag = new EntityTag("4");
+
+    @Test
+    void ifNoneMatchNamingTagIsNotModified() {
+        assertEquals(304, Preconditions.ifNoneMatch("\"4\"", tag).build().getStatus());
+        assertEquals(304, Preconditions.ifNoneMatch("\"3\", W/\"4\"", tag).build()
+                .getStatus());
+        assertEquals(304, Preconditions.ifNoneMatch("*", tag).build().getStatus());
+        assertNull(Preconditions.ifNoneMatch("\"4-d\"", tag));
+        assertNull(Preconditions.ifNoneMatch(null, tag));
+    }
+
+    @Test
+    void ifMatchNeedsStrongTag() {
+        assertNull(Preconditions.ifMatch("\"4\"", tag));
+        assertNull(Preconditions.ifMatch("\"3\",\"4\"", tag));
+        assertNull(Preconditions.ifMatch("*", tag));
+        assertNull(Preconditions.ifMatch(null, tag));
+        assertEquals(412, Preconditions.ifMatch("\"3\"", tag).build().getStatus());
+        assertEquals(412, Preconditions.ifMatch("W/\"4\"", tag).build().getStatus());
+    }
+}
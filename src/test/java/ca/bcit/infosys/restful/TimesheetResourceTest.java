@@ -0,0 +1,211 @@
+package ca.bcit.infosys.restful;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+
+import ca.bcit.infosys.employee.Employee;
+import ca.bcit.infosys.manager.IdentityMap;
+import ca.bcit.infosys.manager.TimesheetManager;
+import ca.bcit.infosys.manager.TimesheetRowManager;
+import ca.bcit.infosys.timesheet.Timesheet;
+import ca.bcit.infosys.timesheet.TimesheetRow;
+
+/**
+ * Tests that TimesheetResource reports database failures instead of
+ * success, using a real TimesheetManager on a scripted connection.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class TimesheetResourceTest {
+
+    /** Names of the connection methods called, in order. */
+    private final List<String> calls = new ArrayList<String>();
+
+    /** Value the suspended request was resumed with. */
+    private Object resumed;
+
+    /** Handler of one proxied interface method. */
+    private interface Handler {
+        Object invoke(String name, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(
+                TimesheetResourceTest.class.getClassLoader(),
+                new Class<?>[] {type}, (p, method, args) -> {
+                    final Object result = handler.invoke(method.getName(),
+                            args == null ? new Object[0] : args);
+                    if (result == null && method.getReturnType() == boolean.class) {
+                        return false;
+                    }
+                    if (result == null && method.getReturnType() == int.class) {
+                        return 0;
+                    }
+                    return result;
+                }));
+    }
+
+    private static void inject(Object target, String name, Object value)
+            throws ReflectiveOperationException {
+        for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                final Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    /**
+     * Gets a data source whose connection inserts the timesheet header as
+     * id 7 and then fails to insert its rows.
+     * @return failing data source
+     */
+    private DataSource failingRowInsert() {
+        final ResultSet keys = proxy(ResultSet.class, (name, args) ->
+                "next".equals(name) ? (Object) true
+                : "getInt".equals(name) ? (Object) 7 : null);
+        final PreparedStatement header = proxy(PreparedStatement.class,
+            (name, args) -> {
+                if ("executeUpdate".equals(name)) {
+                    return 1;
+                }
+                return "getGeneratedKeys".equals(name) ? keys : null;
+            });
+        final PreparedStatement rows = proxy(PreparedStatement.class,
+            (name, args) -> {
+                if ("executeBatch".equals(name)) {
+                    throw new SQLException("Duplicate entry");
+                }
+                return null;
+            });
+        final Connection connection = proxy(Connection.class, (name, args) -> {
+            calls.add(name);
+            if ("prepareStatement".equals(name)) {
+                return args.length == 2 ? header : rows;
+            }
+            return null;
+        });
+        return proxy(DataSource.class, (name, args) -> connection);
+    }
+
+    /**
+     * Gets a data source whose every update fails.
+     * @return failing data source
+     */
+    private DataSource failingUpdate() {
+        final PreparedStatement update = proxy(PreparedStatement.class,
+            (name, args) -> {
+                if ("executeUpdate".equals(name)) {
+                    throw new SQLException("Lock wait timeout exceeded");
+                }
+                return null;
+            });
+        final Connection connection = proxy(Connection.class, (name, args) -> {
+            calls.add(name);
+            return "prepareStatement".equals(name) ? update : null;
+        });
+        return proxy(DataSource.class, (name, args) -> connection);
+    }
+
+    private AsyncResponse recordingResponse() {
+        return proxy(AsyncResponse.class, (name, args) -> {
+            if ("resume".equals(name)) {
+                resumed = args[0];
+                return true;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Gets a pool stand-in that runs writes on the calling thread.
+     * @return synchronous executor
+     */
+    private static DaoExecutor synchronousExecutor() {
+        return new DaoExecutor() {
+            @Override
+            public void submitWrite(AsyncResponse async, String endpoint,
+                    Callable<?> work) {
+                try {
+                    async.resume(work.call());
+                } catch (Exception e) {
+                    async.resume(e);
+                }
+            }
+        };
+    }
+
+    @Test
+    void failedRowInsertIsNotCreated() throws Exception {
+        final TimesheetManager manager = new TimesheetManager();
+        inject(manager, "dataSource", failingRowInsert());
+        inject(manager, "tsRowManager", new TimesheetRowManager());
+        final TimesheetResource resource = new TimesheetResource();
+        resource.tsManager = manager;
+        final Employee admin = new Employee(1, "Admin", "admin", true);
+        inject(resource, "authEmployee", admin);
+        inject(resource, "daoExecutor", synchronousExecutor());
+
+        final List<TimesheetRow> details = new ArrayList<TimesheetRow>();
+        details.add(new TimesheetRow(1, "WP1"));
+        final Timesheet timesheet = new Timesheet(admin,
+                LocalDate.of(2021, 11, 12), details);
+        resource.addTimesheet(recordingResponse(), timesheet);
+
+        assertTrue(resumed instanceof Response);
+        assertEquals(500, ((Response) resumed).getStatus());
+        assertEquals(0, timesheet.getTimesheetId());
+        assertTrue(calls.contains("rollback"));
+        assertFalse(calls.contains("commit"));
+    }
+
+    @Test
+    void failedUpdateIsNotOk() throws Exception {
+        final Employee admin = new Employee(1, "Admin", "admin", true);
+        final Timesheet stored = new Timesheet(admin, LocalDate.of(2021, 11, 12),
+                new ArrayList<TimesheetRow>());
+        final TimesheetManager manager = new TimesheetManager() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Timesheet find(Integer timesheetId) {
+                return stored;
+            }
+        };
+        inject(manager, "dataSource", failingUpdate());
+        inject(manager, "identityMap", new IdentityMap());
+        final TimesheetResource resource = new TimesheetResource();
+        resource.tsManager = manager;
+        inject(resource, "authEmployee", admin);
+        inject(resource, "daoExecutor", synchronousExecutor());
+
+        resource.updateTimesheet(recordingResponse(), 3, null);
+
+        assertTrue(resumed instanceof Response);
+        assertEquals(500, ((Response) resumed).getStatus());
+    }
+}
@@ -0,0 +1,124 @@
+package ca.bcit.infosys.timesheet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the packed decihour storage of TimesheetRow and its conversions.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class TimesheetRowTest {
+
+    @Test
+    void eachDayKeepsItsOwnByte() {
+        final TimesheetRow row = new TimesheetRow();
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            row.setDecihour(d, 200 + d);
+        }
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            assertEquals(200 + d, row.getDecihour(d));
+        }
+        row.setDecihour(TimesheetRow.MON, 0);
+        assertEquals(0, row.getDecihour(TimesheetRow.MON));
+        assertEquals(201, row.getDecihour(TimesheetRow.SUN));
+        assertEquals(203, row.getDecihour(TimesheetRow.TUE));
+    }
+
+    @Test
+    void packsSaturdayIntoTheLowestByte() {
+        final TimesheetRow row = new TimesheetRow();
+        row.setDecihour(TimesheetRow.SAT, 1);
+        row.setDecihour(TimesheetRow.FRI, 2);
+        assertEquals(1L | 2L << 48, row.getPackedHours());
+    }
+
+    @Test
+    void acceptsFullDayAndRejectsMore() {
+        final TimesheetRow row = new TimesheetRow();
+        row.setDecihour(TimesheetRow.WED, 240);
+        assertEquals(240, row.getDecihour(TimesheetRow.WED));
+        assertThrows(IllegalArgumentException.class,
+            () -> row.setDecihour(TimesheetRow.WED, 241));
+        assertThrows(IllegalArgumentException.class,
+            () -> row.setDecihour(TimesheetRow.WED, -1));
+        assertEquals(240, row.getDecihour(TimesheetRow.WED));
+    }
+
+    @Test
+    void rejectsDaysOutsideTheWeek() {
+        final TimesheetRow row = new TimesheetRow();
+        assertThrows(IllegalArgumentException.class, () -> row.setDecihour(7, 1));
+        assertThrows(IllegalArgumentException.class, () -> row.getDecihour(-1));
+    }
+
+    @Test
+    void rejectsMalformedPackedHours() {
+        final TimesheetRow row = new TimesheetRow();
+        assertThrows(IllegalArgumentException.class,
+            () -> row.setPackedHours(-1L));
+        assertThrows(IllegalArgumentException.class,
+            () -> row.setPackedHours(241L));
+        assertThrows(IllegalArgumentException.class,
+            () -> row.setPackedHours(1L << 56));
+        row.setPackedHours(240L << 8);
+        assertEquals(240, row.getDecihour(TimesheetRow.SUN));
+    }
+
+    @Test
+    void roundsHoursHalfUp() {
+        assertEquals(0, TimesheetRow.toDecihour((BigDecimal) null));
+        assertEquals(75, TimesheetRow.toDecihour(new BigDecimal("7.5")));
+        assertEquals(76, TimesheetRow.toDecihour(new BigDecimal("7.55")));
+        assertEquals(75, TimesheetRow.toDecihour(new BigDecimal("7.549")));
+        assertEquals(80, TimesheetRow.toDecihour(new BigDecimal("8")));
+        assertEquals(75, TimesheetRow.toDecihour(7.5f));
+    }
+
+    @Test
+    void sharesHourInstancesForValidCharges() {
+        assertEquals(new BigDecimal("7.5"), TimesheetRow.toBigDecimalHour(75));
+        assertSame(TimesheetRow.toBigDecimalHour(75),
+                TimesheetRow.toBigDecimalHour(75));
+        assertEquals(new BigDecimal("24.1"), TimesheetRow.toBigDecimalHour(241));
+    }
+
+    @Test
+    void weekHoursRoundTrip() {
+        final TimesheetRow row = new TimesheetRow();
+        final BigDecimal[] week = {new BigDecimal("0"), new BigDecimal("1.5"),
+            new BigDecimal("8"), new BigDecimal("8.0"), new BigDecimal("24"),
+            new BigDecimal("0.1"), null};
+        row.setTotalWeekHours(week);
+        assertArrayEquals(new int[] {0, 15, 80, 80, 240, 1, 0},
+                row.getDecihours());
+        assertEquals(new BigDecimal("1.5"), row.getTotalWeekHours()[1]);
+        assertEquals(new BigDecimal("8.0"), row.getMon());
+        assertThrows(IllegalArgumentException.class,
+            () -> row.setTotalWeekHours(new BigDecimal[] {new BigDecimal("24.1")}));
+    }
+
+    @Test
+    void totalsFollowEveryWritePath() {
+        final TimesheetRow row = new TimesheetRow(1, "A", null,
+                1f, 2f, 3f, 4f, 5f, 6f, 7f);
+        assertEquals(280, row.getDeciSum());
+        assertEquals(new BigDecimal("28.0"), row.getSum());
+        row.setDecihour(TimesheetRow.SAT, 0);
+        assertEquals(270, row.getDeciSum());
+        assertEquals(new BigDecimal("27.0"), row.getSum());
+        row.setFri(new BigDecimal("0.5"));
+        assertEquals(205, row.getDeciSum());
+        row.setDecihours(new int[] {10, 10, 10, 10, 10, 10, 10});
+        assertEquals(70, row.getDeciSum());
+        row.setPackedHours(0L);
+        assertEquals(BigDecimal.valueOf(0, 1), row.getSum());
+    }
+}
@@ -0,0 +1,60 @@
+package ca.bcit.infosys.timesheet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the totals a Timesheet computes from its rows.
+ *
+ * @author Benedict Halim and Leon Wu
+ * @version 1.0
+ */
+class TimesheetTest {
+
+    private static Timesheet fullWeek() {
+        final List<TimesheetRow> rows = new ArrayList<TimesheetRow>();
+        rows.add(new TimesheetRow(1, "A", null, 0f, 0f, 8f, 8f, 8f, 0f, 0f));
+        rows.add(new TimesheetRow(2, "B", null, 0f, 0f, 0f, 0f, 0f, 8f, 7.5f));
+        rows.add(new TimesheetRow(3, "C", null, 0f, 0f, 0f, 0f, 0f, 0f, 0.5f));
+        return new Timesheet(null, LocalDate.of(2021, 11, 12), rows);
+    }
+
+    @Test
+    void totalsAddUpAllRows() {
+        final Timesheet timesheet = fullWeek();
+        assertEquals(400, timesheet.getTotalDecihours());
+        assertEquals(new BigDecimal("40.0"), timesheet.getTotalHours());
+        assertTrue(timesheet.isValid());
+    }
+
+    @Test
+    void dailyTotalsMatchIndexedTotals() {
+        final Timesheet timesheet = fullWeek();
+        final int[] daily = timesheet.getDailyDecihours();
+        assertArrayEquals(new int[] {0, 0, 80, 80, 80, 80, 80}, daily);
+        for (int d = TimesheetRow.FIRST_DAY; d <= TimesheetRow.LAST_DAY; d++) {
+            assertEquals(daily[d], timesheet.getDailyDecihour(d));
+            assertEquals(daily[d] / TimesheetRow.BASE10,
+                    timesheet.getDailyHours()[d]);
+        }
+        assertEquals(new BigDecimal("8.0"), timesheet.getDailyHour(TimesheetRow.FRI));
+    }
+
+    @Test
+    void totalsSeeRowsEditedInPlace() {
+        final Timesheet timesheet = fullWeek();
+        timesheet.getDetails().get(0).setDecihour(TimesheetRow.MON, 0);
+        assertEquals(320, timesheet.getTotalDecihours());
+        assertEquals(0, timesheet.getDailyDecihour(TimesheetRow.MON));
+        assertFalse(timesheet.isValid());
+    }
+}